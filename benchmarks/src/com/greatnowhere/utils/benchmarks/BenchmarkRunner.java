@@ -0,0 +1,33 @@
+package com.greatnowhere.utils.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks once per thread count with the GC/allocation profiler attached.
+ * Accepts regular JMH command line options, thread counts are taken from the
+ * benchmark.threads system property (comma separated, default 1,4).
+ * Results of each run go to jmh-result-&lt;threads&gt;.json
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions _cmdLine = new CommandLineOptions(args);
+		String[] _threads = System.getProperty("benchmark.threads", "1,4").split(",");
+		for ( String _t : _threads ) {
+			int _threadCount = Integer.parseInt(_t.trim());
+			OptionsBuilder _opts = new OptionsBuilder();
+			_opts.parent(_cmdLine)
+				.threads(_threadCount)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("jmh-result-" + _threadCount + ".json");
+			new Runner(_opts.build()).run();
+		}
+	}
+}
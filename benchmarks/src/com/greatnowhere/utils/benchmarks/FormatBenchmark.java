@@ -0,0 +1,94 @@
+package com.greatnowhere.utils.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.utils.Utils;
+
+/**
+ * XML pretty printing, date formatting and string assembly
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormatBenchmark {
+
+	/**
+	 * Number of elements in the XML document
+	 */
+	@Param({ "10", "1000" })
+	public int elements;
+
+	private String xml;
+	private Date date;
+	private String first;
+	private String last;
+
+	@Setup
+	public void setup() {
+		StringBuilder _sb = new StringBuilder("<root>");
+		for ( int i=0; i<elements; i++ ) {
+			_sb.append("<item id=\"").append(i).append("\"><name>item").append(i).append("</name></item>");
+		}
+		xml = _sb.append("</root>").toString();
+		date = new Date(1350000000000L);
+		first = "Maria";
+		last = "Garcia";
+	}
+
+	@Benchmark
+	public String prettyFormatXML() {
+		return Utils.prettyFormatXML(xml);
+	}
+
+	@Benchmark
+	public String toDDMMYYY() {
+		return Utils.toDDMMYYY(date);
+	}
+
+	@Benchmark
+	public String toDateTime() {
+		return Utils.toDateTime(date);
+	}
+
+	@Benchmark
+	public String concatenate() {
+		return Utils.concatenate(first, " ", last);
+	}
+
+	@Benchmark
+	public String concatenateVarargs() {
+		return Utils.concatenate(first, " ", last, " ", first);
+	}
+
+	@Benchmark
+	public String coalesce() {
+		return Utils.coalesce(null, first);
+	}
+
+	@Benchmark
+	public boolean hasValue() {
+		return Utils.hasValue(first);
+	}
+
+	@Benchmark
+	public String threadLocalBuilder() {
+		StringBuilder _sb = Utils.acquireBuilder();
+		return Utils.releaseBuilder(_sb.append(first).append(' ').append(last));
+	}
+}
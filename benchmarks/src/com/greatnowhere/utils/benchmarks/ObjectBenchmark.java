@@ -0,0 +1,87 @@
+package com.greatnowhere.utils.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.utils.DeepCloner;
+import com.greatnowhere.utils.Utils;
+
+/**
+ * Serialization round trips, deep cloning and object comparison
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObjectBenchmark {
+
+	/**
+	 * Number of entries in the serialized graph
+	 */
+	@Param({ "10", "1000" })
+	public int size;
+
+	private HashMap<String, ArrayList<Long>> graph;
+	private byte[] serialized;
+	private Object left;
+	private Object right;
+
+	@Setup
+	public void setup() {
+		graph = new HashMap<String, ArrayList<Long>>();
+		for ( int i=0; i<size; i++ ) {
+			ArrayList<Long> _values = new ArrayList<Long>();
+			_values.add((long) i);
+			_values.add((long) i * 31);
+			graph.put("key" + i, _values);
+		}
+		serialized = Utils.serializeObject(graph);
+		left = Long.valueOf(123456789L);
+		right = Long.valueOf(123456780L);
+	}
+
+	@Benchmark
+	public byte[] serializeObject() {
+		return Utils.serializeObject(graph);
+	}
+
+	@Benchmark
+	public Object deSerializeObject() {
+		return Utils.deSerializeObject(serialized);
+	}
+
+	@Benchmark
+	public Object roundTrip() {
+		return Utils.deSerializeObject(Utils.serializeObject(graph));
+	}
+
+	@Benchmark
+	public Object deepClone() {
+		return DeepCloner.deepClone(graph);
+	}
+
+	@Benchmark
+	public int compareObjects() {
+		return Utils.compareObjects(left, right);
+	}
+
+	@Benchmark
+	public int compareObjectsNull() {
+		return Utils.compareObjects(left, null);
+	}
+}
@@ -0,0 +1,136 @@
+package com.greatnowhere.utils.benchmarks;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.utils.Reflection;
+
+/**
+ * Reflection hot paths against their direct equivalents
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReflectionBenchmark {
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.FIELD)
+	public @interface Column {
+		String table();
+	}
+
+	public static class Bean {
+
+		@Column(table = "customer")
+		public String name = "Maria";
+		@Column(table = "customer")
+		public String city = "Madrid";
+		@Column(table = "address")
+		public String street = "Gran Via";
+		public Long id = 1L;
+
+		private Integer count = 1;
+
+		public Integer getCount() {
+			return count;
+		}
+
+		public void setCount(Integer count) {
+			this.count = count;
+		}
+
+		public String greet(String s) {
+			return s;
+		}
+	}
+
+	public static class Base<A, B> {
+	}
+
+	public static class Middle<X> extends Base<String, X> {
+	}
+
+	public static class Leaf extends Middle<Integer> {
+	}
+
+	private Bean bean;
+	private Integer newCount;
+	private String newName;
+
+	@Setup
+	public void setup() {
+		bean = new Bean();
+		newCount = 42;
+		newName = "Garcia";
+	}
+
+	@Benchmark
+	public Object directCall() {
+		return bean.greet(newName);
+	}
+
+	@Benchmark
+	public Object callMethod() {
+		return Reflection.callMethod(bean, "greet", newName);
+	}
+
+	@Benchmark
+	public Object directGetter() {
+		return bean.getCount();
+	}
+
+	@Benchmark
+	public Object callMethodGetter() {
+		return Reflection.callMethod(bean, "getCount");
+	}
+
+	@Benchmark
+	public Object getFieldValueField() {
+		return Reflection.getFieldValue(bean, "name");
+	}
+
+	@Benchmark
+	public Object getFieldValueGetter() {
+		return Reflection.getFieldValue(bean, "count");
+	}
+
+	@Benchmark
+	public Bean setFieldValueField() {
+		Reflection.setFieldValue(bean, "name", newName);
+		return bean;
+	}
+
+	@Benchmark
+	public Bean setFieldValueSetter() {
+		Reflection.setFieldValue(bean, "count", newCount);
+		return bean;
+	}
+
+	@Benchmark
+	public String[] getAnnotatedFields() {
+		return Reflection.getAnnotatedFields(Bean.class, Column.class, "table", "customer");
+	}
+
+	@Benchmark
+	public List<Class<?>> getTypeArguments() {
+		return Reflection.getTypeArguments(Base.class, Leaf.class);
+	}
+}
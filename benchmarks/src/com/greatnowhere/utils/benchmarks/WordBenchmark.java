@@ -0,0 +1,129 @@
+package com.greatnowhere.utils.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.utils.StringPool;
+import com.greatnowhere.utils.Utils;
+
+/**
+ * Word, name and whitespace utilities over sentences of varying length
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WordBenchmark {
+
+	private static final String[] WORDS = { "Maria", "Jose", "Garcia", "Lopez", "Fernandez", "Martinez", "Ana", "Sanchez" };
+
+	/**
+	 * Number of words in the sentence
+	 */
+	@Param({ "4", "32", "256" })
+	public int words;
+
+	/**
+	 * Number of spaces between words
+	 */
+	@Param({ "1", "3" })
+	public int spacing;
+
+	private String sentence;
+	private String fullName;
+	private String shortName;
+	private StringPool pool;
+
+	@Setup
+	public void setup() {
+		StringBuilder _sb = new StringBuilder();
+		for ( int i=0; i<words; i++ ) {
+			_sb.append(WORDS[i % WORDS.length]);
+			for ( int j=0; j<spacing; j++ ) {
+				_sb.append(' ');
+			}
+		}
+		sentence = _sb.toString();
+		fullName = "Maria  Jose Garcia   Lopez";
+		shortName = "Ana Sanchez  Martinez";
+		pool = new StringPool(4096);
+	}
+
+	@Benchmark
+	public String getWordFirst() {
+		return Utils.getWord(sentence, 0);
+	}
+
+	@Benchmark
+	public String getWordLast() {
+		return Utils.getWord(sentence, words - 1);
+	}
+
+	@Benchmark
+	public String getWords() {
+		return Utils.getWords(sentence, 1, 3);
+	}
+
+	@Benchmark
+	public int getWordCount() {
+		return Utils.getWordCount(sentence);
+	}
+
+	@Benchmark
+	public String setWord() {
+		return Utils.setWord(sentence, 1, "Perez");
+	}
+
+	@Benchmark
+	public String normalizeWhitespace() {
+		return Utils.normalizeWhitespace(sentence);
+	}
+
+	@Benchmark
+	public String getFirstName() {
+		return Utils.getFirstName(fullName);
+	}
+
+	@Benchmark
+	public String getLastName1() {
+		return Utils.getLastName1(fullName);
+	}
+
+	@Benchmark
+	public String getLastName2() {
+		return Utils.getLastName2(shortName);
+	}
+
+	@Benchmark
+	public String getWordLastPooled() {
+		return Utils.getWord(sentence, words - 1, pool);
+	}
+
+	@Benchmark
+	public String getFirstNamePooled() {
+		return Utils.getFirstName(fullName, pool);
+	}
+
+	@Benchmark
+	public String getLastName1Pooled() {
+		return Utils.getLastName1(fullName, pool);
+	}
+
+	@Benchmark
+	public String getLastName2Pooled() {
+		return Utils.getLastName2(shortName, pool);
+	}
+}
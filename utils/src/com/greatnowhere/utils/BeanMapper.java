@@ -0,0 +1,383 @@
+package com.greatnowhere.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copies properties between instances of two classes.
+ * Properties are resolved the same way {@link Reflection#getFieldValue(Object, String)} and
+ * {@link Reflection#setFieldValue(Object, String, Object)} do: public field first, then public getter/setter.
+ * Source and target properties are matched once, by name and type, and compiled into a single
+ * method handle copying all of them in a row.
+ * Properties can be renamed and values converted on the way.
+ * @param <S> source class
+ * @param <T> target class
+ */
+public class BeanMapper<S, T> {
+
+	/**
+	 * Converts source property value into target property value
+	 */
+	public interface Converter<F, V> {
+		V convert(F value);
+	}
+
+	/**
+	 * Collections smaller than this are mapped on calling thread
+	 */
+	public static final int PARALLEL_THRESHOLD = 1024;
+
+	// source class -> target class -> mapper
+	private static final MetadataCache<Class<?>, Map<Class<?>, BeanMapper<?, ?>>> cache =
+			new MetadataCache<Class<?>, Map<Class<?>, BeanMapper<?, ?>>>(1024);
+
+	private static final MethodHandle CONVERT;
+	static {
+		try {
+			CONVERT = MethodHandles.publicLookup().findVirtual(Converter.class, "convert",
+					MethodType.methodType(Object.class, Object.class));
+		} catch (Exception e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final Class<S> sourceClass;
+	private final Class<T> targetClass;
+	private final MethodHandle copier;
+	private final MethodHandle constructor;
+	private final List<String> mappedProperties;
+
+	/**
+	 * Returns cached mapper copying all same-named, compatible properties
+	 * @param source class
+	 * @param target class
+	 * @return mapper
+	 */
+	@SuppressWarnings("unchecked")
+	public static <S, T> BeanMapper<S, T> get(Class<S> sourceClass, Class<T> targetClass) {
+		Map<Class<?>, BeanMapper<?, ?>> _targets = cache.getIfPresent(sourceClass);
+		if ( _targets == null ) {
+			_targets = new ConcurrentHashMap<Class<?>, BeanMapper<?, ?>>();
+			cache.put(sourceClass, _targets);
+		}
+		BeanMapper<?, ?> _retval = _targets.get(targetClass);
+		if ( _retval == null ) {
+			_retval = new BeanMapper<S, T>(sourceClass, targetClass);
+			_targets.put(targetClass, _retval);
+		}
+		return (BeanMapper<S, T>) _retval;
+	}
+
+	public BeanMapper(Class<S> sourceClass, Class<T> targetClass) {
+		this(sourceClass, targetClass, null, null);
+	}
+
+	/**
+	 * @param source class
+	 * @param target class
+	 * @param target property name -> source property name. Can be null. Mapping to null source name excludes the property
+	 * @param target property name -> converter applied to source value. Can be null
+	 */
+	public BeanMapper(Class<S> sourceClass, Class<T> targetClass, Map<String, String> renames,
+			Map<String, ? extends Converter<?, ?>> converters) {
+		this.sourceClass = sourceClass;
+		this.targetClass = targetClass;
+		Map<String, String> _renames = ( renames == null ? Collections.<String, String>emptyMap() : renames );
+		Map<String, ? extends Converter<?, ?>> _converters = ( converters == null ?
+				Collections.<String, Converter<?, ?>>emptyMap() : converters );
+
+		Map<String, Accessor> _readers = readers(sourceClass);
+		Map<String, List<Accessor>> _writers = writers(targetClass);
+		List<String> _mapped = new ArrayList<String>();
+		// (Object target, Object source)void doing nothing, each property is folded in front of it
+		MethodHandle _copier = MethodHandles.dropArguments(MethodHandles.constant(Object.class, null).asType(
+				MethodType.methodType(void.class)), 0, Object.class, Object.class);
+		List<MethodHandle> _steps = new ArrayList<MethodHandle>();
+
+		for ( Map.Entry<String, List<Accessor>> _w : _writers.entrySet() ) {
+			String _targetName = _w.getKey();
+			String _sourceName = ( _renames.containsKey(_targetName) ? _renames.get(_targetName) : _targetName );
+			if ( _sourceName == null ) continue;
+			Accessor _reader = _readers.get(_sourceName);
+			if ( _reader == null ) continue;
+			Accessor _writer = selectWriter(_w.getValue(), _reader.type);
+			Converter<?, ?> _converter = _converters.get(_targetName);
+			MethodHandle _get;
+			if ( _converter != null ) {
+				_get = MethodHandles.filterReturnValue(_reader.handle.asType(MethodType.methodType(Object.class, Object.class)),
+						CONVERT.bindTo(_converter));
+				if ( _writer.type.isPrimitive() ) {
+					_get = MethodHandles.filterReturnValue(_get, unbox(_writer.type));
+				}
+			} else if ( isCompatible(_reader.type, _writer.type) ) {
+				_get = _reader.handle;
+			} else {
+				continue;
+			}
+			// (Object target, Object source)void
+			MethodHandle _step = MethodHandles.filterArguments(
+					_writer.handle.asType(MethodType.methodType(void.class, Object.class, _get.type().returnType())),
+					1, _get.asType(MethodType.methodType(_get.type().returnType(), Object.class)));
+			_steps.add(_step);
+			_mapped.add(_targetName);
+		}
+		for ( int i=_steps.size()-1; i>=0; i-- ) {
+			_copier = MethodHandles.foldArguments(_copier, _steps.get(i));
+		}
+		this.copier = _copier;
+		this.mappedProperties = Collections.unmodifiableList(_mapped);
+		this.constructor = findConstructor(targetClass);
+	}
+
+	/**
+	 * Maps source into a new instance of target class. Requires target class to have no-arg constructor
+	 * @param source, can be null
+	 * @return new target instance, or null if source is null
+	 */
+	@SuppressWarnings("unchecked")
+	public T map(S source) {
+		if ( source == null ) return null;
+		if ( constructor == null ) {
+			throw new RuntimeException("Cannot find no-arg constructor on " + targetClass.getName());
+		}
+		Object _retval;
+		try {
+			_retval = constructor.invokeExact();
+		} catch (Throwable t) {
+			throw new RuntimeException("Cannot instantiate " + targetClass.getName(), t);
+		}
+		return map(source, (T) _retval);
+	}
+
+	/**
+	 * Copies mapped properties of source into existing target
+	 * @param source
+	 * @param target
+	 * @return target
+	 */
+	public T map(S source, T target) {
+		try {
+			copier.invokeExact((Object) target, (Object) source);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Error mapping " + sourceClass.getName() + " to " + targetClass.getName(), t);
+		}
+		return target;
+	}
+
+	/**
+	 * Maps every element of collection into new target instance. Large collections are mapped in parallel
+	 * @param sources
+	 * @return list of targets in iteration order of sources
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> mapAll(Collection<? extends S> sources) {
+		final Object[] _sources = sources.toArray();
+		final Object[] _targets = new Object[_sources.length];
+		if ( _sources.length < PARALLEL_THRESHOLD ) {
+			for ( int i=0; i<_sources.length; i++ ) {
+				_targets[i] = map((S) _sources[i]);
+			}
+		} else {
+			ForkJoinPool.commonPool().invoke(new MapTask(_sources, _targets, 0, _sources.length));
+		}
+		return (List<T>) Arrays.asList(_targets);
+	}
+
+	/**
+	 * @return target property names this mapper copies
+	 */
+	public List<String> getMappedProperties() {
+		return mappedProperties;
+	}
+
+	public Class<S> getSourceClass() {
+		return sourceClass;
+	}
+
+	public Class<T> getTargetClass() {
+		return targetClass;
+	}
+
+	private class MapTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final Object[] sources;
+		private final Object[] targets;
+		private final int from;
+		private final int to;
+
+		MapTask(Object[] sources, Object[] targets, int from, int to) {
+			this.sources = sources;
+			this.targets = targets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void compute() {
+			if ( to - from <= PARALLEL_THRESHOLD ) {
+				for ( int i=from; i<to; i++ ) {
+					targets[i] = map((S) sources[i]);
+				}
+			} else {
+				int _mid = (from + to) >>> 1;
+				invokeAll(new MapTask(sources, targets, from, _mid), new MapTask(sources, targets, _mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Property getter or setter handle with its value type
+	 */
+	private static class Accessor {
+
+		final MethodHandle handle;
+		final Class<?> type;
+
+		Accessor(MethodHandle handle, Class<?> type) {
+			this.handle = handle;
+			this.type = type;
+		}
+	}
+
+	/**
+	 * @return property name -> (Object)type handle
+	 */
+	private static Map<String, Accessor> readers(Class<?> cls) {
+		Map<String, Accessor> _retval = new HashMap<String, Accessor>();
+		MethodHandles.Lookup _lookup = MethodHandles.lookup();
+		try {
+			for ( Method _m : cls.getMethods() ) {
+				String _name = propertyName(_m, "get", 0);
+				if ( _name != null && _m.getReturnType() != void.class && _m.getDeclaringClass() != Object.class ) {
+					_m.setAccessible(true);
+					_retval.put(_name, new Accessor(_lookup.unreflect(_m).asType(
+							MethodType.methodType(_m.getReturnType(), Object.class)), _m.getReturnType()));
+				}
+			}
+			// public fields win, same as Reflection.getFieldValue
+			for ( Field _f : cls.getFields() ) {
+				if ( Modifier.isStatic(_f.getModifiers()) ) continue;
+				_f.setAccessible(true);
+				_retval.put(_f.getName(), new Accessor(_lookup.unreflectGetter(_f).asType(
+						MethodType.methodType(_f.getType(), Object.class)), _f.getType()));
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Cannot access properties of " + cls.getName(), e);
+		}
+		return _retval;
+	}
+
+	/**
+	 * @return property name -> (Object, type)void handles, one per setter overload, or the public field alone
+	 */
+	private static Map<String, List<Accessor>> writers(Class<?> cls) {
+		Map<String, List<Accessor>> _retval = new LinkedHashMap<String, List<Accessor>>();
+		MethodHandles.Lookup _lookup = MethodHandles.lookup();
+		try {
+			for ( Method _m : cls.getMethods() ) {
+				String _name = propertyName(_m, "set", 1);
+				if ( _name != null ) {
+					Class<?> _type = _m.getParameterTypes()[0];
+					_m.setAccessible(true);
+					List<Accessor> _overloads = _retval.get(_name);
+					if ( _overloads == null ) {
+						_overloads = new ArrayList<Accessor>(1);
+						_retval.put(_name, _overloads);
+					}
+					_overloads.add(new Accessor(_lookup.unreflect(_m).asType(
+							MethodType.methodType(void.class, Object.class, _type)), _type));
+				}
+			}
+			for ( Field _f : cls.getFields() ) {
+				if ( Modifier.isStatic(_f.getModifiers()) || Modifier.isFinal(_f.getModifiers()) ) continue;
+				_f.setAccessible(true);
+				_retval.put(_f.getName(), Collections.singletonList(new Accessor(_lookup.unreflectSetter(_f).asType(
+						MethodType.methodType(void.class, Object.class, _f.getType())), _f.getType())));
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Cannot access properties of " + cls.getName(), e);
+		}
+		return _retval;
+	}
+
+	/**
+	 * Picks the most specific overload the source type can be passed to, or the first one if none can
+	 * (a converter may still produce a suitable value)
+	 * @param setter overloads of a property
+	 * @param source property type
+	 * @return writer
+	 */
+	private static Accessor selectWriter(List<Accessor> writers, Class<?> sourceType) {
+		Accessor _retval = null;
+		for ( Accessor _w : writers ) {
+			if ( _w.type == sourceType ) return _w;
+			if ( isCompatible(sourceType, _w.type) && ( _retval == null || box(_retval.type).isAssignableFrom(box(_w.type)) ) ) {
+				_retval = _w;
+			}
+		}
+		return ( _retval == null ? writers.get(0) : _retval );
+	}
+
+	private static String propertyName(Method m, String prefix, int parmCount) {
+		String _name = m.getName();
+		if ( Modifier.isStatic(m.getModifiers()) || m.getParameterTypes().length != parmCount
+				|| _name.length() <= prefix.length() || !_name.startsWith(prefix) ) {
+			return null;
+		}
+		return _name.substring(prefix.length(), prefix.length() + 1).toLowerCase() + _name.substring(prefix.length() + 1);
+	}
+
+	/**
+	 * Primitive targets only accept the same primitive, anything else must be assignable after boxing
+	 */
+	private static boolean isCompatible(Class<?> sourceType, Class<?> targetType) {
+		if ( targetType.isPrimitive() ) {
+			return sourceType == targetType;
+		}
+		return targetType.isAssignableFrom(box(sourceType));
+	}
+
+	private static Class<?> box(Class<?> type) {
+		if ( !type.isPrimitive() ) return type;
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	/**
+	 * Converted values are Objects, unboxes them for primitive targets. Converter must not return null
+	 */
+	private static MethodHandle unbox(Class<?> primitive) {
+		return MethodHandles.identity(Object.class).asType(MethodType.methodType(primitive, Object.class));
+	}
+
+	private static MethodHandle findConstructor(Class<?> cls) {
+		try {
+			Constructor<?> _c = cls.getDeclaredConstructor();
+			_c.setAccessible(true);
+			return MethodHandles.lookup().unreflectConstructor(_c).asType(MethodType.methodType(Object.class));
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+}
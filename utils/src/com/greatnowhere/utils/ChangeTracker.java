@@ -0,0 +1,273 @@
+package com.greatnowhere.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Snapshot based dirty checking, replaces comparing Reflection.getFieldValues results with Utils.compareObjects.
+ * Field readers are compiled once per class over all non-static, non-transient fields of the class hierarchy.
+ * Snapshots keep primitive fields unboxed in a long array and references in an Object array.
+ * Primitives are compared by value (floating point by bit pattern), references by equals() or identity.
+ * @param <T> tracked class
+ */
+public class ChangeTracker<T> {
+
+	private static final byte INTEGRAL = 0;
+	private static final byte FLOATING = 1;
+	private static final byte BOOLEAN = 2;
+
+	private static final MetadataCache<Class<?>, ChangeTracker<?>> cache = new MetadataCache<Class<?>, ChangeTracker<?>>(1024);
+
+	private final Class<T> type;
+	private final boolean identity;
+	private final String[] fieldNames;
+	// primitive fields: (Object)long, (Object)double or (Object)boolean readers
+	private final MethodHandle[] primitiveReaders;
+	private final byte[] primitiveKinds;
+	private final int[] primitiveIndexes;
+	// reference fields: (Object)Object readers
+	private final MethodHandle[] referenceReaders;
+	private final int[] referenceIndexes;
+
+	/**
+	 * Immutable field values of one object at one point in time
+	 */
+	public static final class Snapshot {
+
+		private final Class<?> type;
+		private final long[] primitives;
+		private final Object[] references;
+
+		Snapshot(Class<?> type, long[] primitives, Object[] references) {
+			this.type = type;
+			this.primitives = primitives;
+			this.references = references;
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+	}
+
+	/**
+	 * Returns cached tracker comparing references with equals()
+	 * @param tracked class
+	 * @return tracker
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ChangeTracker<T> get(Class<T> type) {
+		ChangeTracker<?> _retval = cache.getIfPresent(type);
+		if ( _retval == null ) {
+			_retval = new ChangeTracker<T>(type, false);
+			cache.put(type, _retval);
+		}
+		return (ChangeTracker<T>) _retval;
+	}
+
+	/**
+	 * @param tracked class
+	 * @param true to compare references by identity, false to compare with equals()
+	 */
+	public ChangeTracker(Class<T> type, boolean identity) {
+		this.type = type;
+		this.identity = identity;
+		List<String> _names = new ArrayList<String>();
+		List<MethodHandle> _prim = new ArrayList<MethodHandle>();
+		List<Byte> _kinds = new ArrayList<Byte>();
+		List<Integer> _primIdx = new ArrayList<Integer>();
+		List<MethodHandle> _ref = new ArrayList<MethodHandle>();
+		List<Integer> _refIdx = new ArrayList<Integer>();
+		MethodHandles.Lookup _lookup = MethodHandles.lookup();
+
+		for ( Class<?> _c = type; _c != null && _c != Object.class; _c = _c.getSuperclass() ) {
+			for ( Field _f : _c.getDeclaredFields() ) {
+				int _mod = _f.getModifiers();
+				if ( Modifier.isStatic(_mod) || Modifier.isTransient(_mod) ) continue;
+				MethodHandle _get;
+				try {
+					_f.setAccessible(true);
+					_get = _lookup.unreflectGetter(_f);
+				} catch (IllegalAccessException e) {
+					throw new RuntimeException("Cannot access field " + _f, e);
+				}
+				int _index = _names.size();
+				_names.add(_f.getName());
+				Class<?> _t = _f.getType();
+				if ( _t == boolean.class ) {
+					_prim.add(_get.asType(MethodType.methodType(boolean.class, Object.class)));
+					_kinds.add(BOOLEAN);
+					_primIdx.add(_index);
+				} else if ( _t == float.class || _t == double.class ) {
+					_prim.add(_get.asType(MethodType.methodType(double.class, Object.class)));
+					_kinds.add(FLOATING);
+					_primIdx.add(_index);
+				} else if ( _t.isPrimitive() ) {
+					_prim.add(_get.asType(MethodType.methodType(long.class, Object.class)));
+					_kinds.add(INTEGRAL);
+					_primIdx.add(_index);
+				} else {
+					_ref.add(_get.asType(MethodType.methodType(Object.class, Object.class)));
+					_refIdx.add(_index);
+				}
+			}
+		}
+		this.fieldNames = _names.toArray(new String[_names.size()]);
+		this.primitiveReaders = _prim.toArray(new MethodHandle[_prim.size()]);
+		this.primitiveKinds = new byte[_kinds.size()];
+		this.primitiveIndexes = new int[_primIdx.size()];
+		for ( int i=0; i<primitiveKinds.length; i++ ) {
+			primitiveKinds[i] = _kinds.get(i);
+			primitiveIndexes[i] = _primIdx.get(i);
+		}
+		this.referenceReaders = _ref.toArray(new MethodHandle[_ref.size()]);
+		this.referenceIndexes = new int[_refIdx.size()];
+		for ( int i=0; i<referenceIndexes.length; i++ ) {
+			referenceIndexes[i] = _refIdx.get(i);
+		}
+	}
+
+	/**
+	 * Captures current field values
+	 * @param obj
+	 * @return snapshot
+	 */
+	public Snapshot snapshot(T obj) {
+		long[] _prims = new long[primitiveReaders.length];
+		Object[] _refs = new Object[referenceReaders.length];
+		for ( int i=0; i<_prims.length; i++ ) {
+			_prims[i] = readPrimitive(i, obj);
+		}
+		for ( int i=0; i<_refs.length; i++ ) {
+			_refs[i] = readReference(i, obj);
+		}
+		return new Snapshot(type, _prims, _refs);
+	}
+
+	/**
+	 * Compares snapshot with current state of an object
+	 * @param snapshot taken earlier
+	 * @param current object
+	 * @return bits set at indexes (see {@link #getFieldNames()}) of changed fields
+	 */
+	public BitSet changedFields(Snapshot before, T current) {
+		checkSnapshot(before);
+		BitSet _retval = new BitSet(fieldNames.length);
+		for ( int i=0; i<primitiveReaders.length; i++ ) {
+			if ( before.primitives[i] != readPrimitive(i, current) ) {
+				_retval.set(primitiveIndexes[i]);
+			}
+		}
+		for ( int i=0; i<referenceReaders.length; i++ ) {
+			if ( !same(before.references[i], readReference(i, current)) ) {
+				_retval.set(referenceIndexes[i]);
+			}
+		}
+		return _retval;
+	}
+
+	/**
+	 * Compares two snapshots
+	 * @return bits set at indexes (see {@link #getFieldNames()}) of changed fields
+	 */
+	public BitSet changedFields(Snapshot before, Snapshot after) {
+		checkSnapshot(before);
+		checkSnapshot(after);
+		BitSet _retval = new BitSet(fieldNames.length);
+		for ( int i=0; i<primitiveReaders.length; i++ ) {
+			if ( before.primitives[i] != after.primitives[i] ) {
+				_retval.set(primitiveIndexes[i]);
+			}
+		}
+		for ( int i=0; i<referenceReaders.length; i++ ) {
+			if ( !same(before.references[i], after.references[i]) ) {
+				_retval.set(referenceIndexes[i]);
+			}
+		}
+		return _retval;
+	}
+
+	/**
+	 * Checks whether any field changed, stops at first difference and does not allocate
+	 * @param snapshot taken earlier
+	 * @param current object
+	 * @return true if any field changed
+	 */
+	public boolean isDirty(Snapshot before, T current) {
+		checkSnapshot(before);
+		for ( int i=0; i<primitiveReaders.length; i++ ) {
+			if ( before.primitives[i] != readPrimitive(i, current) ) return true;
+		}
+		for ( int i=0; i<referenceReaders.length; i++ ) {
+			if ( !same(before.references[i], readReference(i, current)) ) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return names of tracked fields, in bit index order
+	 */
+	public String[] getFieldNames() {
+		return fieldNames.clone();
+	}
+
+	/**
+	 * @param changed field bits
+	 * @return names of changed fields
+	 */
+	public List<String> getFieldNames(BitSet changed) {
+		List<String> _retval = new ArrayList<String>(changed.cardinality());
+		for ( int i=changed.nextSetBit(0); i>=0; i=changed.nextSetBit(i + 1) ) {
+			_retval.add(fieldNames[i]);
+		}
+		return _retval;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	private long readPrimitive(int i, Object obj) {
+		try {
+			switch (primitiveKinds[i]) {
+			case FLOATING:
+				return Double.doubleToRawLongBits((double) primitiveReaders[i].invokeExact(obj));
+			case BOOLEAN:
+				return ( (boolean) primitiveReaders[i].invokeExact(obj) ? 1L : 0L );
+			default:
+				return (long) primitiveReaders[i].invokeExact(obj);
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Cannot read field " + fieldNames[primitiveIndexes[i]] + " of " + type.getName(), t);
+		}
+	}
+
+	private Object readReference(int i, Object obj) {
+		try {
+			return (Object) referenceReaders[i].invokeExact(obj);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Cannot read field " + fieldNames[referenceIndexes[i]] + " of " + type.getName(), t);
+		}
+	}
+
+	private boolean same(Object o1, Object o2) {
+		if ( o1 == o2 ) return true;
+		if ( identity || o1 == null || o2 == null ) return false;
+		return o1.equals(o2);
+	}
+
+	private void checkSnapshot(Snapshot s) {
+		if ( s.type != type ) {
+			throw new IllegalArgumentException("Snapshot of " + s.type.getName() + " cannot be compared by tracker of " + type.getName());
+		}
+	}
+}
@@ -0,0 +1,413 @@
+package com.greatnowhere.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Streams selected columns out of space-delimited text files without creating a String per line.
+ * Files are memory-mapped in windows ending on line boundaries, words are found directly in the mapped bytes.
+ * Word semantics follow Utils.getWord on a normalizeWhitespace'd line: words are separated by one or more
+ * spaces, leading and trailing spaces are ignored, column indexes are 0-based.
+ * Lines end with \n, a trailing \r is dropped. The file must use an ASCII compatible charset.
+ *
+ * Columns are handed out as reusable {@link Slice} views, valid only during the {@link LineHandler} callback.
+ */
+public class ColumnScanner {
+
+	/**
+	 * Largest window mapped at once
+	 */
+	public static final int MAX_WINDOW = 1 << 30;
+
+	/**
+	 * Receives each line of a file. Called by a single thread per instance
+	 */
+	public interface LineHandler {
+		void line(Line line);
+	}
+
+	/**
+	 * Creates one handler per parallel chunk
+	 */
+	public interface LineHandlerFactory<H extends LineHandler> {
+		H create();
+	}
+
+	/**
+	 * Zero-copy view over bytes of a mapped file. charAt() maps each byte to one char (ISO-8859-1 view),
+	 * toString() decodes with the scanner's charset
+	 */
+	public static final class Slice implements CharSequence {
+
+		private ByteBuffer buffer;
+		private int start;
+		private int end;
+		private final Charset charset;
+
+		Slice(Charset charset) {
+			this.charset = charset;
+		}
+
+		void set(ByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+		}
+
+		public int length() {
+			return end - start;
+		}
+
+		public char charAt(int index) {
+			return (char) (buffer.get(start + index) & 0xFF);
+		}
+
+		public CharSequence subSequence(int from, int to) {
+			Slice _retval = new Slice(charset);
+			_retval.set(buffer, start + from, start + to);
+			return _retval;
+		}
+
+		/**
+		 * @return read-only buffer positioned over this slice's bytes, shares content with the mapped file
+		 */
+		public ByteBuffer asByteBuffer() {
+			ByteBuffer _retval = buffer.asReadOnlyBuffer();
+			_retval.limit(end);
+			_retval.position(start);
+			return _retval;
+		}
+
+		/**
+		 * Compares bytes with chars of a string, without decoding
+		 */
+		public boolean contentEquals(CharSequence s) {
+			if ( s == null || s.length() != length() ) return false;
+			for ( int i=0; i<s.length(); i++ ) {
+				if ( charAt(i) != s.charAt(i) ) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Parses slice as a decimal long, without creating a String
+		 * @throws NumberFormatException
+		 */
+		public long parseLong() {
+			int _len = length();
+			if ( _len == 0 ) throw new NumberFormatException("Empty column");
+			int i = 0;
+			boolean _negative = false;
+			// accumulated negatively, as Long.parseLong does, so Long.MIN_VALUE fits
+			long _limit = -Long.MAX_VALUE;
+			if ( charAt(0) == '-' || charAt(0) == '+' ) {
+				_negative = ( charAt(0) == '-' );
+				if ( _negative ) _limit = Long.MIN_VALUE;
+				i++;
+				if ( _len == 1 ) throw new NumberFormatException(toString());
+			}
+			long _multmin = _limit / 10;
+			long _retval = 0;
+			for ( ; i<_len; i++ ) {
+				int _d = charAt(i) - '0';
+				if ( _d < 0 || _d > 9 || _retval < _multmin ) throw new NumberFormatException(toString());
+				_retval *= 10;
+				if ( _retval < _limit + _d ) throw new NumberFormatException(toString());
+				_retval -= _d;
+			}
+			return ( _negative ? _retval : -_retval );
+		}
+
+		@Override
+		public String toString() {
+			byte[] _bytes = new byte[length()];
+			for ( int i=0; i<_bytes.length; i++ ) {
+				_bytes[i] = buffer.get(start + i);
+			}
+			return new String(_bytes, charset);
+		}
+	}
+
+	/**
+	 * Current line. Reused for every line of a chunk
+	 */
+	public static final class Line {
+
+		private final Slice[] columns;
+		private final boolean[] present;
+		private final Slice text;
+		private long offset;
+
+		Line(int columnCount, Charset charset) {
+			this.columns = new Slice[columnCount];
+			this.present = new boolean[columnCount];
+			for ( int i=0; i<columnCount; i++ ) {
+				columns[i] = new Slice(charset);
+			}
+			this.text = new Slice(charset);
+		}
+
+		/**
+		 * @param index into the column list the scanner was created with
+		 * @return column view, or null if line has fewer words, same as Utils.getWord
+		 */
+		public Slice get(int index) {
+			return ( present[index] ? columns[index] : null );
+		}
+
+		/**
+		 * @return number of columns the scanner was created with
+		 */
+		public int getColumnCount() {
+			return columns.length;
+		}
+
+		/**
+		 * @return whole line without line terminator
+		 */
+		public Slice getText() {
+			return text;
+		}
+
+		/**
+		 * @return byte offset of the line in the file
+		 */
+		public long getOffset() {
+			return offset;
+		}
+	}
+
+	private final int[] columns;
+	// word index -> position in columns, -1 if not selected
+	private final int[] slots;
+	private final Charset charset;
+
+	/**
+	 * @param 0-based word indexes to extract, in the order they will be returned by {@link Line#get(int)}
+	 */
+	public ColumnScanner(int... columns) {
+		this(Charset.forName("UTF-8"), columns);
+	}
+
+	public ColumnScanner(Charset charset, int... columns) {
+		this.charset = charset;
+		this.columns = columns.clone();
+		int _max = -1;
+		for ( int _c : columns ) {
+			if ( _c < 0 ) throw new IllegalArgumentException("Negative column index " + _c);
+			_max = Math.max(_max, _c);
+		}
+		this.slots = new int[_max + 1];
+		for ( int i=0; i<slots.length; i++ ) {
+			slots[i] = -1;
+		}
+		for ( int i=0; i<columns.length; i++ ) {
+			if ( slots[columns[i]] != -1 ) throw new IllegalArgumentException("Duplicate column index " + columns[i]);
+			slots[columns[i]] = i;
+		}
+	}
+
+	/**
+	 * Scans whole file on calling thread
+	 * @param file
+	 * @param handler
+	 * @return number of lines
+	 * @throws IOException
+	 */
+	public long scan(File file, LineHandler handler) throws IOException {
+		RandomAccessFile _raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel _ch = _raf.getChannel();
+			long[] _bounds = chunkBoundaries(_ch, 1);
+			Line _line = new Line(columns.length, charset);
+			long _retval = 0;
+			for ( int i=0; i<_bounds.length-1; i++ ) {
+				_retval += scanChunk(_ch, _bounds[i], _bounds[i + 1], _line, handler);
+			}
+			return _retval;
+		} finally {
+			_raf.close();
+		}
+	}
+
+	/**
+	 * Splits file into chunks on line boundaries and scans them in parallel on the common fork-join pool
+	 * @param file
+	 * @param number of chunks, e.g. Runtime.availableProcessors()
+	 * @param creates handler per chunk, each handler sees lines of one chunk only, in file order
+	 * @return handlers in file order, for merging their results
+	 * @throws IOException
+	 */
+	public <H extends LineHandler> List<H> scanParallel(File file, int chunks, LineHandlerFactory<H> factory) throws IOException {
+		RandomAccessFile _raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel _ch = _raf.getChannel();
+			long[] _bounds = chunkBoundaries(_ch, chunks);
+			List<H> _retval = new ArrayList<H>();
+			List<ForkJoinTask<Long>> _tasks = new ArrayList<ForkJoinTask<Long>>();
+			for ( int i=0; i<_bounds.length-1; i++ ) {
+				final H _handler = factory.create();
+				final long _from = _bounds[i];
+				final long _to = _bounds[i + 1];
+				_retval.add(_handler);
+				_tasks.add(ForkJoinPool.commonPool().submit(new RecursiveTask<Long>() {
+					private static final long serialVersionUID = 1L;
+					@Override
+					protected Long compute() {
+						try {
+							return scanChunk(_ch, _from, _to, new Line(columns.length, charset), _handler);
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}));
+			}
+			for ( ForkJoinTask<Long> _t : _tasks ) {
+				try {
+					_t.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while scanning " + file, e);
+				} catch (ExecutionException e) {
+					Throwable _cause = ( e.getCause() instanceof RuntimeException && e.getCause().getCause() instanceof IOException ?
+							e.getCause().getCause() : e.getCause() );
+					if ( _cause instanceof IOException ) throw (IOException) _cause;
+					if ( _cause instanceof RuntimeException ) throw (RuntimeException) _cause;
+					throw new RuntimeException(_cause);
+				}
+			}
+			return _retval;
+		} finally {
+			_raf.close();
+		}
+	}
+
+	/**
+	 * Splits file into at least the requested number of chunks, each starting at a line start
+	 * and no longer than {@link #MAX_WINDOW}
+	 * @return chunk offsets, chunk i is [offsets[i], offsets[i+1])
+	 */
+	static long[] chunkBoundaries(FileChannel ch, int chunks) throws IOException {
+		long _size = ch.size();
+		long _target = Math.max(1, Math.min(MAX_WINDOW, ( _size + chunks - 1 ) / Math.max(1, chunks)));
+		List<Long> _bounds = new ArrayList<Long>();
+		_bounds.add(0L);
+		ByteBuffer _buf = ByteBuffer.allocate(8192);
+		long _pos = 0;
+		while ( _size - _pos > _target ) {
+			long _next = nextLineStart(ch, _pos + _target, _buf);
+			if ( _next - _pos > MAX_WINDOW ) {
+				// line end after the target is past the window, cut at the last line end inside it
+				_next = lastLineStart(ch, _pos, _pos + MAX_WINDOW, _buf);
+				if ( _next == -1 ) {
+					throw new IOException("Line at offset " + _pos + " is longer than " + MAX_WINDOW + " bytes");
+				}
+			}
+			if ( _next >= _size ) break;
+			_bounds.add(_next);
+			_pos = _next;
+		}
+		_bounds.add(_size);
+		long[] _retval = new long[_bounds.size()];
+		for ( int i=0; i<_retval.length; i++ ) {
+			_retval[i] = _bounds.get(i);
+		}
+		return _retval;
+	}
+
+	/**
+	 * @return offset following the last \n in [start, end), or -1 if there is none
+	 */
+	private static long lastLineStart(FileChannel ch, long start, long end, ByteBuffer buf) throws IOException {
+		long _blockEnd = end;
+		while ( _blockEnd > start ) {
+			long _blockStart = Math.max(start, _blockEnd - buf.capacity());
+			buf.clear();
+			buf.limit((int) (_blockEnd - _blockStart));
+			int _read = 0;
+			while ( buf.hasRemaining() ) {
+				int _r = ch.read(buf, _blockStart + _read);
+				if ( _r <= 0 ) break;
+				_read += _r;
+			}
+			for ( int i=_read-1; i>=0; i-- ) {
+				if ( buf.get(i) == '\n' ) return _blockStart + i + 1;
+			}
+			_blockEnd = _blockStart;
+		}
+		return -1;
+	}
+
+	private static long nextLineStart(FileChannel ch, long from, ByteBuffer buf) throws IOException {
+		long _pos = from;
+		while ( true ) {
+			buf.clear();
+			int _read = ch.read(buf, _pos);
+			if ( _read <= 0 ) return ch.size();
+			for ( int i=0; i<_read; i++ ) {
+				if ( buf.get(i) == '\n' ) return _pos + i + 1;
+			}
+			_pos += _read;
+		}
+	}
+
+	private long scanChunk(FileChannel ch, long from, long to, Line line, LineHandler handler) throws IOException {
+		if ( to <= from ) return 0;
+		MappedByteBuffer _buf = ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+		int _limit = _buf.limit();
+		long _lines = 0;
+		int _lineStart = 0;
+		while ( _lineStart < _limit ) {
+			int _lineEnd = _lineStart;
+			while ( _lineEnd < _limit && _buf.get(_lineEnd) != '\n' ) {
+				_lineEnd++;
+			}
+			int _next = _lineEnd + 1;
+			if ( _lineEnd > _lineStart && _buf.get(_lineEnd - 1) == '\r' ) {
+				_lineEnd--;
+			}
+			parseLine(_buf, _lineStart, _lineEnd, line);
+			line.offset = from + _lineStart;
+			handler.line(line);
+			_lines++;
+			_lineStart = _next;
+		}
+		return _lines;
+	}
+
+	private void parseLine(ByteBuffer buf, int start, int end, Line line) {
+		line.text.set(buf, start, end);
+		for ( int i=0; i<line.present.length; i++ ) {
+			line.present[i] = false;
+		}
+		int _word = 0;
+		int i = start;
+		while ( i < end && _word < slots.length ) {
+			while ( i < end && buf.get(i) == ' ' ) {
+				i++;
+			}
+			if ( i == end ) break;
+			int _wordStart = i;
+			while ( i < end && buf.get(i) != ' ' ) {
+				i++;
+			}
+			int _slot = slots[_word];
+			if ( _slot >= 0 ) {
+				line.columns[_slot].set(buf, _wordStart, i);
+				line.present[_slot] = true;
+			}
+			_word++;
+		}
+	}
+}
@@ -0,0 +1,432 @@
+package com.greatnowhere.utils;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Reflective deep copy, an alternative to Utils.deSerializeObject(Utils.serializeObject(obj)).
+ * Builds a copy plan once per class: primitive and immutable fields are copied by a single
+ * compiled method handle, remaining reference fields are cloned recursively.
+ * Immutable values are shared, arrays are copied in bulk, cycles and shared references
+ * are preserved through an identity map. Fields and array elements are shared without recursion
+ * only if their declared type is a final immutable class, otherwise the runtime class decides.
+ * Collections and maps are rebuilt element by element into an empty instance configured like
+ * the source (comparator, EnumMap key type, LinkedHashMap access order); fields declared by
+ * application subclasses are copied as for beans. Other JDK classes fall back to clone() or
+ * serialization.
+ */
+public class DeepCloner {
+
+	private enum Kind { IMMUTABLE, PRIMITIVE_ARRAY, ARRAY, COLLECTION, MAP, CLONEABLE, SERIALIZABLE, BEAN }
+
+	private static final MetadataCache<Class<?>, Plan> plans = new MetadataCache<Class<?>, Plan>(4096);
+	private static final Set<Class<?>> immutables = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+	private static final MethodHandle ALLOCATE_INSTANCE = findAllocateInstance();
+
+	static {
+		Class<?>[] _immutables = { String.class, Boolean.class, Character.class, Byte.class, Short.class,
+				Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class,
+				Class.class, UUID.class, Locale.class, Pattern.class };
+		for ( Class<?> _c : _immutables ) {
+			immutables.add(_c);
+		}
+	}
+
+	/**
+	 * Marks class as immutable, its instances will be shared between original and copy
+	 * @param cls
+	 */
+	public static void registerImmutable(Class<?> cls) {
+		immutables.add(cls);
+		plans.invalidate(cls);
+	}
+
+	/**
+	 * Returns deep copy of an object graph
+	 * @param obj, can be null
+	 * @return copy
+	 */
+	public static <T> T deepClone(T obj) {
+		return deepClone(obj, new IdentityHashMap<Object, Object>());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T deepClone(T obj, IdentityHashMap<Object, Object> copies) {
+		if ( obj == null ) return null;
+		Plan _plan = plan(obj.getClass());
+		if ( _plan.kind == Kind.IMMUTABLE ) return obj;
+		Object _retval = copies.get(obj);
+		if ( _retval != null ) return (T) _retval;
+		try {
+			_retval = _plan.copy(obj, copies);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Cannot clone " + obj.getClass().getName(), t);
+		}
+		return (T) _retval;
+	}
+
+	private static Plan plan(Class<?> cls) {
+		Plan _retval = plans.getIfPresent(cls);
+		if ( _retval == null ) {
+			_retval = new Plan(cls);
+			plans.put(cls, _retval);
+		}
+		return _retval;
+	}
+
+	/**
+	 * Per-class copy strategy
+	 */
+	private static final class Plan {
+
+		final Class<?> type;
+		final Kind kind;
+		// BEAN: ()Object
+		MethodHandle allocator;
+		// BEAN, and COLLECTION, MAP of application classes: (Object target, Object source)void copying
+		// primitive and immutable fields
+		MethodHandle shallowCopy;
+		// BEAN, and COLLECTION, MAP of application classes: (Object)Object and (Object, Object)void
+		// of fields needing recursion
+		MethodHandle[] getters;
+		MethodHandle[] setters;
+		// COLLECTION, MAP: (Object source)Object creating an empty instance configured like the source
+		MethodHandle creator;
+		// CLONEABLE: (Object)Object public clone()
+		MethodHandle cloneMethod;
+
+		Plan(Class<?> type) {
+			this.type = type;
+			this.kind = kindOf(type);
+		}
+
+		private Kind kindOf(Class<?> cls) {
+			if ( cls.isEnum() || ( cls.getSuperclass() != null && cls.getSuperclass().isEnum() ) || isImmutable(cls) ) {
+				return Kind.IMMUTABLE;
+			}
+			if ( cls.isArray() ) {
+				return ( cls.getComponentType().isPrimitive() || isFinalImmutable(cls.getComponentType()) ?
+						Kind.PRIMITIVE_ARRAY : Kind.ARRAY );
+			}
+			boolean _jdk = isJdk(cls);
+			boolean _map = Map.class.isAssignableFrom(cls);
+			if ( _map || Collection.class.isAssignableFrom(cls) ) {
+				creator = findCreator(cls, _jdk);
+				if ( creator != null ) {
+					if ( !_jdk ) {
+						// fields of the application subclass, JDK superclass state is rebuilt through add/put
+						compileFields(cls, true);
+					}
+					return ( _map ? Kind.MAP : Kind.COLLECTION );
+				}
+				// a shallow clone() would share elements, serialization is the only deep fallback
+				if ( Serializable.class.isAssignableFrom(cls) ) {
+					return Kind.SERIALIZABLE;
+				}
+				throw new RuntimeException("Cannot build clone plan for " + cls.getName() + ", no way to create an empty instance");
+			}
+			if ( !_jdk ) {
+				try {
+					compileBean(cls);
+					return Kind.BEAN;
+				} catch (RuntimeException e) {
+					// e.g. inaccessible JDK superclass fields, try the fallbacks below
+				}
+			}
+			if ( Cloneable.class.isAssignableFrom(cls) ) {
+				cloneMethod = findCloneMethod(cls);
+				if ( cloneMethod != null ) {
+					return Kind.CLONEABLE;
+				}
+			}
+			if ( Serializable.class.isAssignableFrom(cls) ) {
+				return Kind.SERIALIZABLE;
+			}
+			throw new RuntimeException("Cannot build clone plan for " + cls.getName());
+		}
+
+		/**
+		 * @return (Object)Object creating an empty collection or map like the source, null if not possible
+		 */
+		private MethodHandle findCreator(Class<?> cls, boolean jdk) {
+			try {
+				MethodHandles.Lookup _lookup = MethodHandles.lookup();
+				if ( cls == EnumMap.class ) {
+					// key type is only reachable through the copy constructor
+					return _lookup.findStatic(DeepCloner.class, "emptyEnumMap", MethodType.methodType(Object.class, Object.class));
+				}
+				if ( jdk && LinkedHashMap.class.isAssignableFrom(cls) ) {
+					// access order is only reachable through clone()
+					MethodHandle _clone = findCloneMethod(cls);
+					if ( _clone != null ) {
+						return MethodHandles.filterReturnValue(_clone, clear());
+					}
+				}
+				MethodHandle _retval = null;
+				if ( SortedSet.class.isAssignableFrom(cls) || SortedMap.class.isAssignableFrom(cls)
+						|| PriorityQueue.class.isAssignableFrom(cls) ) {
+					_retval = findConstructor(cls, new Class<?>[] { Comparator.class });
+				} else if ( PriorityBlockingQueue.class.isAssignableFrom(cls) ) {
+					_retval = findConstructor(cls, new Class<?>[] { int.class, Comparator.class });
+					if ( _retval != null ) {
+						_retval = MethodHandles.insertArguments(_retval, 0, 11);
+					}
+				}
+				if ( _retval != null ) {
+					_retval = MethodHandles.filterArguments(_retval, 0,
+							_lookup.findStatic(DeepCloner.class, "comparatorOf", MethodType.methodType(Comparator.class, Object.class)));
+				} else {
+					_retval = findConstructor(cls, new Class<?>[0]);
+					if ( _retval == null ) return null;
+					_retval = MethodHandles.dropArguments(_retval, 0, Object.class);
+				}
+				// application constructors may add default content
+				return ( jdk ? _retval : MethodHandles.filterReturnValue(_retval, clear()) );
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		private void compileBean(Class<?> cls) {
+			allocator = findConstructor(cls, new Class<?>[0]);
+			if ( allocator == null ) {
+				if ( ALLOCATE_INSTANCE == null ) {
+					throw new RuntimeException("Cannot find no-arg constructor on " + cls.getName());
+				}
+				allocator = ALLOCATE_INSTANCE.bindTo(cls);
+			}
+			compileFields(cls, false);
+		}
+
+		/**
+		 * Compiles field copy of a class hierarchy
+		 * @param class
+		 * @param true to skip fields declared by JDK superclasses
+		 */
+		private void compileFields(Class<?> cls, boolean skipJdk) {
+			MethodHandle _shallow = MethodHandles.dropArguments(MethodHandles.constant(Object.class, null).asType(
+					MethodType.methodType(void.class)), 0, Object.class, Object.class);
+			List<MethodHandle> _getters = new ArrayList<MethodHandle>();
+			List<MethodHandle> _setters = new ArrayList<MethodHandle>();
+			MethodHandles.Lookup _lookup = MethodHandles.lookup();
+			for ( Class<?> _c = cls; _c != null && _c != Object.class && !( skipJdk && isJdk(_c) ); _c = _c.getSuperclass() ) {
+				for ( Field _f : _c.getDeclaredFields() ) {
+					if ( Modifier.isStatic(_f.getModifiers()) ) continue;
+					_f.setAccessible(true);
+					MethodHandle _get;
+					MethodHandle _set;
+					try {
+						_get = _lookup.unreflectGetter(_f);
+						_set = _lookup.unreflectSetter(_f);
+					} catch (IllegalAccessException e) {
+						throw new RuntimeException("Cannot access field " + _f, e);
+					}
+					if ( _f.getType().isPrimitive() || isFinalImmutable(_f.getType()) || _f.getType().isEnum() ) {
+						MethodHandle _step = MethodHandles.filterArguments(
+								_set.asType(MethodType.methodType(void.class, Object.class, _f.getType())),
+								1, _get.asType(MethodType.methodType(_f.getType(), Object.class)));
+						_shallow = MethodHandles.foldArguments(_shallow, _step);
+					} else {
+						_getters.add(_get.asType(MethodType.methodType(Object.class, Object.class)));
+						_setters.add(_set.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+					}
+				}
+			}
+			shallowCopy = _shallow;
+			getters = _getters.toArray(new MethodHandle[_getters.size()]);
+			setters = _setters.toArray(new MethodHandle[_setters.size()]);
+		}
+
+		@SuppressWarnings("unchecked")
+		Object copy(Object obj, IdentityHashMap<Object, Object> copies) throws Throwable {
+			Object _retval;
+			switch (kind) {
+			case PRIMITIVE_ARRAY:
+				_retval = copyArray(obj);
+				copies.put(obj, _retval);
+				return _retval;
+			case ARRAY:
+				_retval = copyArray(obj);
+				copies.put(obj, _retval);
+				Object[] _array = (Object[]) _retval;
+				for ( int i=0; i<_array.length; i++ ) {
+					_array[i] = deepClone(_array[i], copies);
+				}
+				return _retval;
+			case COLLECTION:
+				Collection<Object> _coll = (Collection<Object>) creator.invoke(obj);
+				copies.put(obj, _coll);
+				copyFields(obj, _coll, copies);
+				for ( Object _o : (Collection<?>) obj ) {
+					_coll.add(deepClone(_o, copies));
+				}
+				return _coll;
+			case MAP:
+				Map<Object, Object> _map = (Map<Object, Object>) creator.invoke(obj);
+				copies.put(obj, _map);
+				copyFields(obj, _map, copies);
+				for ( Map.Entry<?, ?> _e : ((Map<?, ?>) obj).entrySet() ) {
+					_map.put(deepClone(_e.getKey(), copies), deepClone(_e.getValue(), copies));
+				}
+				return _map;
+			case CLONEABLE:
+				// JDK cloneables (Date, Calendar...) hold no shared mutable references worth following
+				_retval = cloneMethod.invoke(obj);
+				copies.put(obj, _retval);
+				return _retval;
+			case SERIALIZABLE:
+				_retval = Utils.deSerializeObject(Utils.serializeObject((Serializable) obj));
+				copies.put(obj, _retval);
+				return _retval;
+			case BEAN:
+				_retval = allocator.invoke();
+				copies.put(obj, _retval);
+				copyFields(obj, _retval, copies);
+				return _retval;
+			default:
+				return obj;
+			}
+		}
+
+		private void copyFields(Object obj, Object target, IdentityHashMap<Object, Object> copies) throws Throwable {
+			if ( shallowCopy == null ) return;
+			shallowCopy.invokeExact(target, obj);
+			for ( int i=0; i<getters.length; i++ ) {
+				Object _value = (Object) getters[i].invokeExact(obj);
+				setters[i].invokeExact(target, deepClone(_value, copies));
+			}
+		}
+
+		private Object copyArray(Object array) {
+			int _len = Array.getLength(array);
+			Object _retval = Array.newInstance(type.getComponentType(), _len);
+			System.arraycopy(array, 0, _retval, 0, _len);
+			return _retval;
+		}
+	}
+
+	private static boolean isImmutable(Class<?> cls) {
+		return immutables.contains(cls) || cls.getName().startsWith("java.time.");
+	}
+
+	/**
+	 * Declared types can only be shared without looking at the value if no subclass can be mutable
+	 */
+	private static boolean isFinalImmutable(Class<?> cls) {
+		return Modifier.isFinal(cls.getModifiers()) && isImmutable(cls);
+	}
+
+	private static boolean isJdk(Class<?> cls) {
+		return cls.getName().startsWith("java.") || cls.getName().startsWith("javax.");
+	}
+
+	private static MethodHandle clear() throws NoSuchMethodException, IllegalAccessException {
+		return MethodHandles.lookup().findStatic(DeepCloner.class, "clear", MethodType.methodType(Object.class, Object.class));
+	}
+
+	static Object clear(Object collectionOrMap) {
+		if ( collectionOrMap instanceof Map ) {
+			((Map<?, ?>) collectionOrMap).clear();
+		} else {
+			((Collection<?>) collectionOrMap).clear();
+		}
+		return collectionOrMap;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Object emptyEnumMap(Object source) {
+		EnumMap _retval = new EnumMap((EnumMap) source);
+		_retval.clear();
+		return _retval;
+	}
+
+	static Comparator<?> comparatorOf(Object source) {
+		if ( source instanceof SortedSet ) return ((SortedSet<?>) source).comparator();
+		if ( source instanceof SortedMap ) return ((SortedMap<?, ?>) source).comparator();
+		if ( source instanceof PriorityQueue ) return ((PriorityQueue<?>) source).comparator();
+		if ( source instanceof PriorityBlockingQueue ) return ((PriorityBlockingQueue<?>) source).comparator();
+		return null;
+	}
+
+	private static MethodHandle findConstructor(Class<?> cls, Class<?>[] parms) {
+		if ( Modifier.isAbstract(cls.getModifiers()) ) return null;
+		try {
+			Constructor<?> _c = cls.getDeclaredConstructor(parms);
+			if ( !Modifier.isPublic(_c.getModifiers()) ) {
+				_c.setAccessible(true);
+			}
+			MethodHandle _h = MethodHandles.lookup().unreflectConstructor(_c);
+			return _h.asType(_h.type().changeReturnType(Object.class));
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// inaccessible module member
+			return null;
+		}
+	}
+
+	/**
+	 * sun.misc.Unsafe.allocateInstance bound to the Unsafe instance, used for classes without no-arg constructor
+	 * @return (Class)Object, or null if not available on this JVM
+	 */
+	private static MethodHandle findAllocateInstance() {
+		try {
+			Class<?> _unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field _theUnsafe = _unsafeClass.getDeclaredField("theUnsafe");
+			_theUnsafe.setAccessible(true);
+			Method _allocate = _unsafeClass.getMethod("allocateInstance", Class.class);
+			return MethodHandles.lookup().unreflect(_allocate).bindTo(_theUnsafe.get(null));
+		} catch (Throwable t) {
+			// classes without no-arg constructor will not be clonable
+			return null;
+		}
+	}
+
+	/**
+	 * @return (Object)Object handle of public clone() method, or null if class does not have one
+	 */
+	private static MethodHandle findCloneMethod(Class<?> cls) {
+		try {
+			Method _clone = cls.getMethod("clone");
+			MethodHandle _h = MethodHandles.publicLookup().unreflect(_clone);
+			return _h.asType(MethodType.methodType(Object.class, Object.class));
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package com.greatnowhere.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Deduplicates repeated log events keyed by (level, origin class name, message, exception type name).
+ * Keys hold names only, so tracked events do not keep origin or exception classes loaded.
+ * First occurrence of an event is to be logged in full, further occurrences are counted
+ * and reported as a summary once per summary interval.
+ * Memory is bounded: each lock stripe keeps at most maxEntries/stripes keys, least recently
+ * seen keys are evicted first.
+ */
+public class LogAggregator {
+
+	public static final int DEFAULT_STRIPES = 16;
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+	public static final long DEFAULT_SUMMARY_INTERVAL = 60000L;
+
+	/**
+	 * Returned by {@link #record(Class, String, Throwable)} when the event must not be logged
+	 */
+	public static final long SUPPRESS = -1L;
+
+	private final Stripe[] stripes;
+	private final long summaryIntervalMillis;
+	private final AtomicLong totalSuppressed = new AtomicLong();
+	private final AtomicLong evictedSuppressed = new AtomicLong();
+
+	public LogAggregator() {
+		this(DEFAULT_STRIPES, DEFAULT_MAX_ENTRIES, DEFAULT_SUMMARY_INTERVAL);
+	}
+
+	/**
+	 * @param number of lock stripes, rounded up to power of two
+	 * @param maximum number of distinct events tracked
+	 * @param interval between summaries of the same event, in milliseconds
+	 */
+	public LogAggregator(int stripeCount, int maxEntries, long summaryIntervalMillis) {
+		int _stripes = 1;
+		while ( _stripes < stripeCount ) {
+			_stripes <<= 1;
+		}
+		int _perStripe = Math.max(1, maxEntries / _stripes);
+		this.stripes = new Stripe[_stripes];
+		for ( int i=0; i<_stripes; i++ ) {
+			this.stripes[i] = new Stripe(_perStripe);
+		}
+		this.summaryIntervalMillis = summaryIntervalMillis;
+	}
+
+	/**
+	 * Records an occurrence of an event
+	 * @param level the event is logged at
+	 * @param origin class
+	 * @param message
+	 * @param exception, can be null
+	 * @return {@link #SUPPRESS} if event should not be logged, 0 if it should be logged in full,
+	 * or number of occurrences suppressed since the last time it was logged
+	 */
+	public long record(Level level, Class<?> origin, String message, Throwable t) {
+		Key _key = new Key(level, origin, message, ( t == null ? null : t.getClass() ));
+		Stripe _stripe = stripes[_key.hash & (stripes.length - 1)];
+		long _now = System.currentTimeMillis();
+		synchronized (_stripe) {
+			Counter _counter = _stripe.get(_key);
+			if ( _counter == null ) {
+				_stripe.put(_key, new Counter(_now));
+				return 0;
+			}
+			if ( _now - _counter.windowStart < summaryIntervalMillis ) {
+				_counter.suppressed++;
+				totalSuppressed.incrementAndGet();
+				return SUPPRESS;
+			}
+			long _retval = _counter.suppressed;
+			_counter.suppressed = 0;
+			_counter.windowStart = _now;
+			return _retval;
+		}
+	}
+
+	/**
+	 * Returns and resets all pending summaries, regardless of summary interval
+	 * @return list of events having suppressed occurrences
+	 */
+	public List<Summary> drainSummaries() {
+		List<Summary> _retval = new ArrayList<Summary>();
+		long _now = System.currentTimeMillis();
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				for ( Iterator<Map.Entry<Key, Counter>> _it = _stripe.entrySet().iterator(); _it.hasNext(); ) {
+					Map.Entry<Key, Counter> _e = _it.next();
+					Counter _counter = _e.getValue();
+					if ( _counter.suppressed > 0 ) {
+						_retval.add(new Summary(_e.getKey(), _counter.suppressed, _now - _counter.windowStart));
+						_counter.suppressed = 0;
+						_counter.windowStart = _now;
+					}
+				}
+			}
+		}
+		return _retval;
+	}
+
+	public long getSummaryIntervalMillis() {
+		return summaryIntervalMillis;
+	}
+
+	/**
+	 * @return total number of occurrences suppressed since creation
+	 */
+	public long getTotalSuppressed() {
+		return totalSuppressed.get();
+	}
+
+	/**
+	 * @return number of suppressed occurrences whose summary was lost because their key got evicted
+	 */
+	public long getEvictedSuppressed() {
+		return evictedSuppressed.get();
+	}
+
+	/**
+	 * Pending summary of a repeated event
+	 */
+	public static class Summary {
+
+		private final Key key;
+		private final long suppressed;
+		private final long periodMillis;
+
+		Summary(Key key, long suppressed, long periodMillis) {
+			this.key = key;
+			this.suppressed = suppressed;
+			this.periodMillis = periodMillis;
+		}
+
+		public Level getLevel() {
+			return key.level;
+		}
+
+		/**
+		 * @return canonical name of the origin class, or its binary name if it has none
+		 */
+		public String getOriginName() {
+			return key.originName;
+		}
+
+		public String getMessage() {
+			return key.message;
+		}
+
+		/**
+		 * @return exception class name, or null
+		 */
+		public String getExceptionType() {
+			return key.exceptionType;
+		}
+
+		public long getSuppressed() {
+			return suppressed;
+		}
+
+		public long getPeriodMillis() {
+			return periodMillis;
+		}
+	}
+
+	private static final class Key {
+
+		final Level level;
+		final String originName;
+		final String message;
+		final String exceptionType;
+		final int hash;
+
+		Key(Level level, Class<?> origin, String message, Class<?> exceptionType) {
+			this.level = level;
+			this.originName = Utils.coalesce(origin.getCanonicalName(), origin.getName());
+			this.message = message;
+			this.exceptionType = ( exceptionType == null ? null : exceptionType.getName() );
+			int _h = level.intValue();
+			_h = 31 * _h + originName.hashCode();
+			_h = 31 * _h + ( message == null ? 0 : message.hashCode() );
+			_h = 31 * _h + ( this.exceptionType == null ? 0 : this.exceptionType.hashCode() );
+			// spread high bits, stripe is picked by low bits
+			this.hash = _h ^ (_h >>> 16);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if ( this == obj ) return true;
+			if ( !(obj instanceof Key) ) return false;
+			Key _other = (Key) obj;
+			return hash == _other.hash && level.equals(_other.level) && originName.equals(_other.originName)
+					&& ( exceptionType == null ? _other.exceptionType == null : exceptionType.equals(_other.exceptionType) )
+					&& ( message == null ? _other.message == null : message.equals(_other.message) );
+		}
+	}
+
+	private static final class Counter {
+
+		long windowStart;
+		long suppressed;
+
+		Counter(long windowStart) {
+			this.windowStart = windowStart;
+		}
+	}
+
+	/**
+	 * Access-ordered map evicting least recently seen events
+	 */
+	private final class Stripe extends LinkedHashMap<Key, Counter> {
+
+		private static final long serialVersionUID = 1L;
+		private final int maxEntries;
+
+		Stripe(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Counter> eldest) {
+			if ( size() > maxEntries ) {
+				evictedSuppressed.addAndGet(eldest.getValue().suppressed);
+				return true;
+			}
+			return false;
+		}
+	}
+}
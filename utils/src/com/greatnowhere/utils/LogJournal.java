@@ -0,0 +1,397 @@
+package com.greatnowhere.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Binary structured log sink. Writes compact records into rotating memory-mapped files.
+ * Origin classes and message templates are interned into ids, up to a bounded number of each; past that
+ * they are written inline with every event. A definition is written into a journal file right before the
+ * first event of that file using it, so every file can be decoded on its own.
+ * Templates use {@link java.text.MessageFormat} placeholders ({0}, {1}...) and are only formatted
+ * offline by {@link LogJournalReader}.
+ * Primitive argument overloads do not allocate on the logging path.
+ * Logging never throws: records that cannot be written (too large for a journal file, journal file
+ * cannot be opened) are dropped and counted, see {@link #getDroppedCount()}.
+ *
+ * Record layout: int record length, byte record type, then
+ * for events: long timestamp, int level, int origin id, int template id, byte arg count, args;
+ * an id of {@link #INLINE} is followed by the origin name or template string itself
+ * for definitions: int id, string
+ * Args are a tag byte followed by the value, strings are int length followed by UTF-16 chars.
+ * Record length of 0 marks the end of written data.
+ */
+public class LogJournal implements Closeable {
+
+	public static final int MAGIC = 0x4C4A524E; // "LJRN"
+	public static final int VERSION = 2;
+	public static final String FILE_SUFFIX = ".journal";
+
+	static final byte RECORD_EVENT = 1;
+	static final byte RECORD_ORIGIN = 2;
+	static final byte RECORD_TEMPLATE = 3;
+
+	static final byte ARG_NULL = 0;
+	static final byte ARG_LONG = 1;
+	static final byte ARG_DOUBLE = 2;
+	static final byte ARG_STRING = 3;
+	static final byte ARG_BOOLEAN = 4;
+
+	static final int INLINE = -1;
+
+	static final int HEADER_SIZE = 8;
+	static final int EVENT_SIZE = 4 + 1 + 8 + 4 + 4 + 4 + 1;
+
+	/**
+	 * Longer string arguments are truncated
+	 */
+	public static final int MAX_STRING_LENGTH = 4096;
+
+	/**
+	 * Dictionary sizes, further origins and templates are written inline
+	 */
+	public static final int MAX_ORIGINS = 4096;
+	public static final int MAX_TEMPLATES = 4096;
+
+	private final File directory;
+	private final String prefix;
+	private final int fileSize;
+	private final int maxFiles;
+
+	// keyed by class name, so the journal does not keep origin classes loaded; guarded by this
+	private final Map<String, Integer> originIds = new HashMap<String, Integer>();
+	private final Map<String, Integer> templateIds = new HashMap<String, Integer>();
+	// ids already defined in the current file
+	private final BitSet originsInFile = new BitSet();
+	private final BitSet templatesInFile = new BitSet();
+	private long dropped;
+
+	private volatile Level level = Level.ALL;
+	private MappedByteBuffer buffer;
+	private int fileIndex;
+	private boolean closed;
+	// converted varargs arguments, guarded by this
+	private final Object[] argScratch = new Object[Byte.MAX_VALUE];
+
+	/**
+	 * @param directory to write journal files to
+	 * @param journal file name prefix
+	 * @param size of each file in bytes
+	 * @param number of files to keep, older files are deleted on rotation
+	 * @throws IOException
+	 */
+	public LogJournal(File directory, String prefix, int fileSize, int maxFiles) throws IOException {
+		if ( fileSize < 1024 ) {
+			throw new IllegalArgumentException("Journal file size too small: " + fileSize);
+		}
+		this.directory = directory;
+		this.prefix = prefix;
+		this.fileSize = fileSize;
+		this.maxFiles = Math.max(1, maxFiles);
+		if ( !directory.isDirectory() && !directory.mkdirs() ) {
+			throw new IOException("Cannot create journal directory " + directory);
+		}
+		this.fileIndex = findLastFileIndex();
+		rotate();
+	}
+
+	/**
+	 * @return number of records dropped because they could not be written
+	 */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	public void setLevel(Level level) {
+		this.level = level;
+	}
+
+	public boolean isLoggable(Level level) {
+		return level.intValue() >= this.level.intValue();
+	}
+
+	public void log(Level level, Object origin, String template) {
+		if ( !isLoggable(level) ) return;
+		synchronized (this) {
+			if ( !beginEvent(level, origin, template, 0, 0) ) return;
+		}
+	}
+
+	public void log(Level level, Object origin, String template, long arg0) {
+		if ( !isLoggable(level) ) return;
+		synchronized (this) {
+			if ( !beginEvent(level, origin, template, 1, 9) ) return;
+			putLong(arg0);
+		}
+	}
+
+	public void log(Level level, Object origin, String template, long arg0, long arg1) {
+		if ( !isLoggable(level) ) return;
+		synchronized (this) {
+			if ( !beginEvent(level, origin, template, 2, 18) ) return;
+			putLong(arg0);
+			putLong(arg1);
+		}
+	}
+
+	public void log(Level level, Object origin, String template, double arg0) {
+		if ( !isLoggable(level) ) return;
+		synchronized (this) {
+			if ( !beginEvent(level, origin, template, 1, 9) ) return;
+			putDouble(arg0);
+		}
+	}
+
+	public void log(Level level, Object origin, String template, Object arg0) {
+		if ( !isLoggable(level) ) return;
+		synchronized (this) {
+			Object _arg0 = toArg(arg0);
+			if ( !beginEvent(level, origin, template, 1, argSize(_arg0)) ) return;
+			putArg(_arg0);
+		}
+	}
+
+	public void log(Level level, Object origin, String template, Object arg0, Object arg1) {
+		if ( !isLoggable(level) ) return;
+		synchronized (this) {
+			Object _arg0 = toArg(arg0);
+			Object _arg1 = toArg(arg1);
+			if ( !beginEvent(level, origin, template, 2, argSize(_arg0) + argSize(_arg1)) ) return;
+			putArg(_arg0);
+			putArg(_arg1);
+		}
+	}
+
+	public void log(Level level, Object origin, String template, Object... args) {
+		if ( !isLoggable(level) ) return;
+		int _count = Math.min(args.length, Byte.MAX_VALUE);
+		synchronized (this) {
+			int _size = 0;
+			for ( int i=0; i<_count; i++ ) {
+				argScratch[i] = toArg(args[i]);
+				_size += argSize(argScratch[i]);
+			}
+			try {
+				if ( !beginEvent(level, origin, template, _count, _size) ) return;
+				for ( int i=0; i<_count; i++ ) {
+					putArg(argScratch[i]);
+				}
+			} finally {
+				Arrays.fill(argScratch, 0, _count, null);
+			}
+		}
+	}
+
+	/**
+	 * Forces written records to disk
+	 */
+	public synchronized void flush() {
+		if ( buffer != null ) {
+			buffer.force();
+		}
+	}
+
+	public synchronized void close() {
+		flush();
+		buffer = null;
+		closed = true;
+	}
+
+	/**
+	 * @return file currently being written
+	 */
+	public synchronized File getCurrentFile() {
+		return fileFor(fileIndex);
+	}
+
+	/**
+	 * Resolves ids, makes room, writes missing definitions and fixed part of an event record
+	 * @return false if journal is closed or the record was dropped
+	 */
+	private boolean beginEvent(Level level, Object origin, String template, int argCount, int argsSize) {
+		if ( closed ) return false;
+		String _originName = origin.getClass().getName();
+		String _template = Utils.coalesce(template, "");
+		int _originId = id(originIds, _originName, MAX_ORIGINS);
+		int _templateId = id(templateIds, _template, MAX_TEMPLATES);
+		int _eventSize = EVENT_SIZE + argsSize +
+				( _originId == INLINE ? stringSize(_originName) : 0 ) + ( _templateId == INLINE ? stringSize(_template) : 0 );
+		// worst case on a fresh file: header, both definitions, event and the terminating zero length
+		int _worstCase = HEADER_SIZE + definitionSize(_originId, _originName) + definitionSize(_templateId, _template) + _eventSize + 4;
+		if ( _worstCase > fileSize ) {
+			dropped++;
+			return false;
+		}
+		try {
+			int _needed = _eventSize + 4 +
+					( _originId != INLINE && !originsInFile.get(_originId) ? definitionSize(_originId, _originName) : 0 ) +
+					( _templateId != INLINE && !templatesInFile.get(_templateId) ? definitionSize(_templateId, _template) : 0 );
+			if ( buffer == null || buffer.remaining() < _needed ) {
+				rotate();
+			}
+		} catch (IOException e) {
+			dropped++;
+			return false;
+		}
+		if ( _originId != INLINE && !originsInFile.get(_originId) ) {
+			writeDefinition(RECORD_ORIGIN, _originId, _originName);
+			originsInFile.set(_originId);
+		}
+		if ( _templateId != INLINE && !templatesInFile.get(_templateId) ) {
+			writeDefinition(RECORD_TEMPLATE, _templateId, _template);
+			templatesInFile.set(_templateId);
+		}
+		buffer.putInt(_eventSize);
+		buffer.put(RECORD_EVENT);
+		buffer.putLong(System.currentTimeMillis());
+		buffer.putInt(level.intValue());
+		buffer.putInt(_originId);
+		if ( _originId == INLINE ) putString(_originName);
+		buffer.putInt(_templateId);
+		if ( _templateId == INLINE ) putString(_template);
+		buffer.put((byte) argCount);
+		return true;
+	}
+
+	/**
+	 * @return dictionary id of value, assigning the next one if there is room, or INLINE
+	 */
+	private static int id(Map<String, Integer> ids, String value, int maxSize) {
+		Integer _id = ids.get(value);
+		if ( _id == null ) {
+			if ( ids.size() >= maxSize ) return INLINE;
+			_id = ids.size();
+			ids.put(value, _id);
+		}
+		return _id;
+	}
+
+	private static int definitionSize(int id, String value) {
+		return ( id == INLINE ? 0 : 4 + 1 + 4 + stringSize(value) );
+	}
+
+	private void writeDefinition(byte type, int id, String value) {
+		buffer.putInt(definitionSize(id, value));
+		buffer.put(type);
+		buffer.putInt(id);
+		putString(value);
+	}
+
+	/**
+	 * Opens next journal file and writes its header, deletes files past maxFiles.
+	 * Definitions are written lazily by the events using them
+	 * @throws IOException if the file cannot be opened, logging resumes with the next file then
+	 */
+	private void rotate() throws IOException {
+		if ( buffer != null ) {
+			buffer.force();
+			buffer = null;
+		}
+		originsInFile.clear();
+		templatesInFile.clear();
+		fileIndex++;
+		File _file = fileFor(fileIndex);
+		RandomAccessFile _raf = new RandomAccessFile(_file, "rw");
+		try {
+			_raf.setLength(fileSize);
+			buffer = _raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+		} finally {
+			// mapping stays valid after the channel is closed
+			_raf.close();
+		}
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		File _old = fileFor(fileIndex - maxFiles);
+		if ( _old.exists() && !_old.delete() ) {
+			LogUtils.warn(this, "Cannot delete old journal file " + _old, null);
+		}
+	}
+
+	private File fileFor(int index) {
+		return new File(directory, prefix + "-" + String.format("%08d", index) + FILE_SUFFIX);
+	}
+
+	private int findLastFileIndex() {
+		int _retval = 0;
+		String[] _names = directory.list();
+		if ( _names == null ) return _retval;
+		for ( String _name : _names ) {
+			if ( _name.startsWith(prefix + "-") && _name.endsWith(FILE_SUFFIX) ) {
+				try {
+					_retval = Math.max(_retval, Integer.parseInt(_name.substring(prefix.length() + 1, _name.length() - FILE_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+				}
+			}
+		}
+		return _retval;
+	}
+
+	/**
+	 * Keeps null, Boolean and primitive wrappers, formats anything else once, so size and written bytes agree
+	 */
+	private static Object toArg(Object arg) {
+		if ( arg == null || arg instanceof Boolean || arg instanceof Long || arg instanceof Integer || arg instanceof Short
+				|| arg instanceof Byte || arg instanceof Double || arg instanceof Float ) return arg;
+		return String.valueOf(arg);
+	}
+
+	/**
+	 * @param argument converted by {@link #toArg(Object)}
+	 */
+	private static int argSize(Object arg) {
+		if ( arg == null ) return 1;
+		if ( arg instanceof Boolean ) return 2;
+		if ( arg instanceof String ) return 1 + stringSize((String) arg);
+		return 9;
+	}
+
+	private static int stringSize(String s) {
+		return 4 + 2 * Math.min(s.length(), MAX_STRING_LENGTH);
+	}
+
+	/**
+	 * @param argument converted by {@link #toArg(Object)}
+	 */
+	private void putArg(Object arg) {
+		if ( arg == null ) {
+			buffer.put(ARG_NULL);
+		} else if ( arg instanceof Boolean ) {
+			buffer.put(ARG_BOOLEAN);
+			buffer.put((byte) ( ((Boolean) arg).booleanValue() ? 1 : 0 ));
+		} else if ( arg instanceof Double || arg instanceof Float ) {
+			putDouble(((Number) arg).doubleValue());
+		} else if ( arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte ) {
+			putLong(((Number) arg).longValue());
+		} else {
+			buffer.put(ARG_STRING);
+			putString((String) arg);
+		}
+	}
+
+	private void putLong(long value) {
+		buffer.put(ARG_LONG);
+		buffer.putLong(value);
+	}
+
+	private void putDouble(double value) {
+		buffer.put(ARG_DOUBLE);
+		buffer.putDouble(value);
+	}
+
+	private void putString(String s) {
+		int _len = Math.min(s.length(), MAX_STRING_LENGTH);
+		buffer.putInt(_len);
+		for ( int i=0; i<_len; i++ ) {
+			buffer.putChar(s.charAt(i));
+		}
+	}
+}
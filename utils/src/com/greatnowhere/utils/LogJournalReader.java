@@ -0,0 +1,245 @@
+package com.greatnowhere.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Decodes journal files written by {@link LogJournal} back into events or text.
+ * Can be run from command line:
+ * LogJournalReader [-level=WARNING] [-origin=com.package.prefix] [-grep=text] file|directory...
+ */
+public class LogJournalReader {
+
+	/**
+	 * Receives decoded events
+	 */
+	public interface Visitor {
+		void visit(Event event);
+	}
+
+	/**
+	 * Decoded journal event
+	 */
+	public static class Event {
+
+		private final long timestamp;
+		private final Level level;
+		private final String origin;
+		private final String template;
+		private final Object[] args;
+
+		Event(long timestamp, Level level, String origin, String template, Object[] args) {
+			this.timestamp = timestamp;
+			this.level = level;
+			this.origin = origin;
+			this.template = template;
+			this.args = args;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public Level getLevel() {
+			return level;
+		}
+
+		public String getOrigin() {
+			return origin;
+		}
+
+		public String getTemplate() {
+			return template;
+		}
+
+		public Object[] getArgs() {
+			return args;
+		}
+
+		/**
+		 * @return template formatted with arguments
+		 */
+		public String getMessage() {
+			if ( args.length == 0 ) return template;
+			try {
+				return MessageFormat.format(template, args);
+			} catch (IllegalArgumentException e) {
+				return template + " " + Arrays.toString(args);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(timestamp)) + " " +
+					level.getName() + " " + origin + ": " + getMessage();
+		}
+	}
+
+	/**
+	 * Reads all events of single journal file
+	 * @param journal file
+	 * @param visitor receiving events
+	 * @throws IOException if file can not be read or is not a journal
+	 */
+	public static void read(File file, Visitor visitor) throws IOException {
+		MappedByteBuffer _buf;
+		RandomAccessFile _raf = new RandomAccessFile(file, "r");
+		try {
+			_buf = _raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, _raf.length());
+		} finally {
+			_raf.close();
+		}
+		if ( _buf.remaining() < LogJournal.HEADER_SIZE || _buf.getInt() != LogJournal.MAGIC ) {
+			throw new IOException(file + " is not a journal file");
+		}
+		int _version = _buf.getInt();
+		// version 1 files never contain inline origins or templates
+		if ( _version < 1 || _version > LogJournal.VERSION ) {
+			throw new IOException("Unsupported journal version " + _version + " in " + file);
+		}
+		Map<Integer, String> _origins = new HashMap<Integer, String>();
+		Map<Integer, String> _templates = new HashMap<Integer, String>();
+		Map<Integer, Level> _levels = new HashMap<Integer, Level>();
+
+		while ( _buf.remaining() >= 4 ) {
+			int _start = _buf.position();
+			int _len = _buf.getInt();
+			if ( _len <= 0 || _len > _buf.remaining() + 4 ) break;
+			byte _type = _buf.get();
+			if ( _type == LogJournal.RECORD_ORIGIN ) {
+				int _id = _buf.getInt();
+				_origins.put(_id, getString(_buf));
+			} else if ( _type == LogJournal.RECORD_TEMPLATE ) {
+				int _id = _buf.getInt();
+				_templates.put(_id, getString(_buf));
+			} else if ( _type == LogJournal.RECORD_EVENT ) {
+				long _ts = _buf.getLong();
+				int _levelValue = _buf.getInt();
+				int _originId = _buf.getInt();
+				String _origin = ( _originId == LogJournal.INLINE ? getString(_buf) : _origins.get(_originId) );
+				int _templateId = _buf.getInt();
+				String _template = ( _templateId == LogJournal.INLINE ? getString(_buf) : _templates.get(_templateId) );
+				Object[] _args = new Object[_buf.get()];
+				for ( int i=0; i<_args.length; i++ ) {
+					_args[i] = getArg(_buf);
+				}
+				Level _level = _levels.get(_levelValue);
+				if ( _level == null ) {
+					_level = Level.parse(String.valueOf(_levelValue));
+					_levels.put(_levelValue, _level);
+				}
+				visitor.visit(new Event(_ts, _level, _origin, _template, _args));
+			}
+			// skip unknown record types and anything left unread
+			_buf.position(_start + _len);
+		}
+	}
+
+	/**
+	 * Reads journal files or directories of journal files in file name order
+	 * @param files or directories
+	 * @param visitor receiving events
+	 * @throws IOException
+	 */
+	public static void read(List<File> files, Visitor visitor) throws IOException {
+		List<File> _files = new ArrayList<File>();
+		for ( File _f : files ) {
+			if ( _f.isDirectory() ) {
+				File[] _children = _f.listFiles();
+				if ( _children == null ) continue;
+				Arrays.sort(_children);
+				for ( File _child : _children ) {
+					if ( _child.getName().endsWith(LogJournal.FILE_SUFFIX) ) {
+						_files.add(_child);
+					}
+				}
+			} else {
+				_files.add(_f);
+			}
+		}
+		for ( File _f : _files ) {
+			read(_f, visitor);
+		}
+	}
+
+	/**
+	 * Returns visitor that prints events matching the filter as text
+	 * @param output
+	 * @param minimum level, can be null
+	 * @param origin class name prefix, can be null
+	 * @param text formatted message must contain, can be null
+	 * @return visitor
+	 */
+	public static Visitor textPrinter(final PrintStream out, final Level minLevel, final String originPrefix, final String grep) {
+		return new Visitor() {
+			public void visit(Event event) {
+				if ( minLevel != null && event.getLevel().intValue() < minLevel.intValue() ) return;
+				if ( originPrefix != null && ( event.getOrigin() == null || !event.getOrigin().startsWith(originPrefix) ) ) return;
+				String _text = event.toString();
+				if ( grep != null && _text.indexOf(grep) == -1 ) return;
+				out.println(_text);
+			}
+		};
+	}
+
+	public static void main(String[] args) throws IOException {
+		Level _level = null;
+		String _origin = null;
+		String _grep = null;
+		List<File> _files = new ArrayList<File>();
+		for ( String _arg : args ) {
+			if ( _arg.startsWith("-level=") ) {
+				_level = Level.parse(_arg.substring("-level=".length()));
+			} else if ( _arg.startsWith("-origin=") ) {
+				_origin = _arg.substring("-origin=".length());
+			} else if ( _arg.startsWith("-grep=") ) {
+				_grep = _arg.substring("-grep=".length());
+			} else {
+				_files.add(new File(_arg));
+			}
+		}
+		if ( _files.isEmpty() ) {
+			System.err.println("Usage: LogJournalReader [-level=WARNING] [-origin=prefix] [-grep=text] file|directory...");
+			System.exit(1);
+		}
+		read(_files, textPrinter(System.out, _level, _origin, _grep));
+	}
+
+	private static Object getArg(MappedByteBuffer buf) {
+		byte _tag = buf.get();
+		switch (_tag) {
+		case LogJournal.ARG_LONG:
+			return buf.getLong();
+		case LogJournal.ARG_DOUBLE:
+			return buf.getDouble();
+		case LogJournal.ARG_BOOLEAN:
+			return buf.get() != 0;
+		case LogJournal.ARG_STRING:
+			return getString(buf);
+		default:
+			return null;
+		}
+	}
+
+	private static String getString(MappedByteBuffer buf) {
+		int _len = buf.getInt();
+		char[] _chars = new char[_len];
+		for ( int i=0; i<_len; i++ ) {
+			_chars[i] = buf.getChar();
+		}
+		return new String(_chars);
+	}
+}
@@ -0,0 +1,134 @@
+package com.greatnowhere.utils;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class LogUtils {
+
+	/**
+	 * Aggregator deduplicating repeated warnings and errors. Null disables aggregation
+	 */
+	private static volatile LogAggregator aggregator = new LogAggregator();
+
+	// logs suppressed counts once per summary interval, so bursts that stop are still reported.
+	// Started with the first aggregated event, stopped when aggregation is disabled or on shutdown()
+	private static Timer summaryTimer;
+	private static volatile TimerTask summaryTask;
+
+	public static void log(Level level, Object origin, String message) {
+		log(level, origin, message, null, false);
+	}
+	
+	public static void log(Level level, Object origin, String message, Throwable t) {
+		log(level, origin, message, t, false);
+	}
+	
+	public static void log(Level level, Object origin, String message, Throwable t, boolean useCause) {
+		// Throwable _t = ( t == null ? new RuntimeException() : t );
+		Logger.getLogger(origin.getClass().getCanonicalName()).
+		log(level, origin.getClass().getCanonicalName() + ": " + Utils.coalesce(message + " ",""), (useCause && t != null ? t.getCause() : t));
+	}
+	
+	public static void warn(Object origin, String msg, Throwable t) {
+		logAggregated(Level.WARNING,origin,msg,t);
+	}
+	
+	public static void error(Object origin, String msg, Throwable t) {
+		logAggregated(Level.SEVERE,origin,msg,t);
+	}
+	
+	public static void info(Object origin, String msg, Throwable t) {
+		log(Level.INFO,origin,msg,t,false);
+	}
+	
+	/**
+	 * Replaces aggregator used by warn() and error()
+	 * @param aggregator, or null to log every occurrence in full
+	 */
+	public static void setAggregator(LogAggregator aggregator) {
+		LogUtils.aggregator = aggregator;
+		stopSummaries();
+	}
+	
+	public static LogAggregator getAggregator() {
+		return aggregator;
+	}
+	
+	/**
+	 * Logs summaries of all currently suppressed warnings and errors
+	 */
+	public static void flushAggregatedSummaries() {
+		LogAggregator _agg = aggregator;
+		if ( _agg == null ) return;
+		for ( LogAggregator.Summary _s : _agg.drainSummaries() ) {
+			String _origin = _s.getOriginName();
+			Logger.getLogger(_origin).log(_s.getLevel(), _origin + ": " + Utils.coalesce(_s.getMessage() + " ","") +
+					summaryText(_s.getSuppressed(), _s.getPeriodMillis(), _s.getExceptionType()));
+		}
+	}
+
+	/**
+	 * Logs pending summaries and stops the summary timer thread, e.g. when the application is undeployed.
+	 * The timer starts again with the next aggregated event
+	 */
+	public static void shutdown() {
+		stopSummaries();
+		flushAggregatedSummaries();
+	}
+
+	private static synchronized void stopSummaries() {
+		if ( summaryTimer != null ) {
+			summaryTimer.cancel();
+			summaryTimer = null;
+		}
+		summaryTask = null;
+	}
+
+	private static synchronized void startSummaries(LogAggregator agg) {
+		if ( summaryTask != null || agg != aggregator ) return;
+		long _interval = Math.max(1000L, agg.getSummaryIntervalMillis());
+		summaryTask = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					flushAggregatedSummaries();
+				} catch (RuntimeException e) {
+					// keep the timer alive, next run retries
+				}
+			}
+		};
+		summaryTimer = new Timer("LogUtils-summaries", true);
+		summaryTimer.schedule(summaryTask, _interval, _interval);
+	}
+
+	/**
+	 * Logs first occurrence of an event in full, then only periodic summaries of repeated occurrences
+	 */
+	private static void logAggregated(Level level, Object origin, String msg, Throwable t) {
+		LogAggregator _agg = aggregator;
+		if ( _agg == null ) {
+			log(level,origin,msg,t,false);
+			return;
+		}
+		if ( summaryTask == null ) {
+			startSummaries(_agg);
+		}
+		long _suppressed = _agg.record(level, origin.getClass(), msg, t);
+		if ( _suppressed == LogAggregator.SUPPRESS ) {
+			return;
+		}
+		if ( _suppressed == 0 ) {
+			log(level,origin,msg,t,false);
+		} else {
+			log(level,origin,Utils.coalesce(msg,"") + " " + summaryText(_suppressed, -1, ( t == null ? null : t.getClass().getName() )),t,false);
+		}
+	}
+	
+	private static String summaryText(long suppressed, long periodMillis, String exceptionType) {
+		return "[" + suppressed + " similar messages suppressed" + 
+				( periodMillis >= 0 ? " in last " + (periodMillis / 1000) + "s" : "" ) +
+				( exceptionType != null ? ", exception " + exceptionType : "" ) + "]";
+	}
+}
@@ -0,0 +1,336 @@
+package com.greatnowhere.utils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded concurrent cache for reflection metadata.
+ * Entries live in lock-striped, access-ordered maps. When a stripe is full, the least frequently used of its
+ * least recently used entries is evicted; frequencies are halved periodically so old popularity fades.
+ *
+ * With weak keys, keys (typically Class or ClassLoader) are compared by identity and held weakly, values
+ * are held softly. A value strongly referencing its key (a Class through its Methods or Fields, a handle
+ * or the Class itself) keeps the key, and with it the classloader, reachable until the JVM clears the
+ * soft value under memory pressure; {@link #invalidate(ClassLoader)} drops such entries right away after
+ * redeploy. Metadata of one class that references the class is better kept in a {@link ClassValue}.
+ * Without weak keys, keys are compared with equals() and keys and values are held strongly.
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class MetadataCache<K, V> {
+
+	/**
+	 * Computes missing values
+	 */
+	public interface Loader<K, V> {
+		V load(K key);
+	}
+
+	public static final int DEFAULT_STRIPES = 16;
+	// how many of the least recently used entries compete for eviction
+	private static final int EVICTION_CANDIDATES = 4;
+	private static final int MAX_FREQUENCY = 255;
+
+	private final MetadataCache<K, V>.Stripe[] stripes;
+	private final boolean weakKeys;
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates cache with weak keys
+	 * @param maximum number of entries
+	 */
+	public MetadataCache(int maxSize) {
+		this(maxSize, true);
+	}
+
+	/**
+	 * @param maximum number of entries
+	 * @param true for weak identity keys and soft values, false for strong equals() keys and values
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public MetadataCache(int maxSize, boolean weakKeys) {
+		int _stripes = 1;
+		while ( _stripes < DEFAULT_STRIPES && _stripes * 2 <= maxSize ) {
+			_stripes <<= 1;
+		}
+		int _perStripe = Math.max(1, maxSize / _stripes);
+		this.stripes = new MetadataCache.Stripe[_stripes];
+		for ( int i=0; i<_stripes; i++ ) {
+			stripes[i] = new Stripe(_perStripe);
+		}
+		this.weakKeys = weakKeys;
+	}
+
+	/**
+	 * Returns cached value, loading it if missing. Loader is called outside of locks and
+	 * may run more than once for the same key under contention
+	 * @param key
+	 * @param loader
+	 * @return value
+	 */
+	public V get(K key, Loader<? super K, ? extends V> loader) {
+		V _retval = getIfPresent(key);
+		if ( _retval == null ) {
+			_retval = loader.load(key);
+			if ( _retval != null ) {
+				put(key, _retval);
+			}
+		}
+		return _retval;
+	}
+
+	/**
+	 * @param key
+	 * @return cached value or null
+	 */
+	public V getIfPresent(K key) {
+		Object _lookup = lookupKey(key);
+		Stripe _stripe = stripeFor(_lookup);
+		V _retval = null;
+		synchronized (_stripe) {
+			CacheEntry<V> _entry = _stripe.get(_lookup);
+			if ( _entry != null ) {
+				_retval = _entry.get();
+				if ( _retval == null ) {
+					// soft value collected
+					_stripe.remove(_lookup);
+				} else if ( _entry.frequency < MAX_FREQUENCY ) {
+					_entry.frequency++;
+				}
+			}
+		}
+		if ( _retval == null ) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return _retval;
+	}
+
+	public void put(K key, V value) {
+		purge();
+		Object _mapKey = ( weakKeys ? new WeakKey(key, queue) : key );
+		Stripe _stripe = stripeFor(_mapKey);
+		synchronized (_stripe) {
+			_stripe.put(_mapKey, new CacheEntry<V>(value, weakKeys));
+			_stripe.evictIfFull();
+		}
+	}
+
+	public void invalidate(K key) {
+		Object _lookup = lookupKey(key);
+		Stripe _stripe = stripeFor(_lookup);
+		synchronized (_stripe) {
+			_stripe.remove(_lookup);
+		}
+	}
+
+	/**
+	 * Removes entries keyed by the classloader itself, or by classes it or its children loaded
+	 * @param loader
+	 */
+	public void invalidate(ClassLoader loader) {
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				for ( Iterator<Object> _it = _stripe.keySet().iterator(); _it.hasNext(); ) {
+					Object _key = _it.next();
+					if ( _key instanceof WeakKey ) _key = ((WeakKey) _key).get();
+					if ( _key == null ) continue;
+					ClassLoader _cl = ( _key instanceof ClassLoader ? (ClassLoader) _key :
+						_key instanceof Class<?> ? ((Class<?>) _key).getClassLoader() : null );
+					for ( ; _cl != null; _cl = _cl.getParent() ) {
+						if ( _cl == loader ) {
+							_it.remove();
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				_stripe.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int _retval = 0;
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				_retval += _stripe.size();
+			}
+		}
+		return _retval;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), or 0 if never accessed
+	 */
+	public double getHitRate() {
+		long _hits = hits.get();
+		long _total = _hits + misses.get();
+		return ( _total == 0 ? 0 : (double) _hits / _total );
+	}
+
+	@Override
+	public String toString() {
+		return "MetadataCache[size=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+	/**
+	 * Drops entries whose weak keys were collected
+	 */
+	private void purge() {
+		Reference<?> _ref;
+		while ( ( _ref = queue.poll() ) != null ) {
+			Stripe _stripe = stripeFor(_ref);
+			synchronized (_stripe) {
+				_stripe.remove(_ref);
+			}
+		}
+	}
+
+	private Object lookupKey(K key) {
+		return ( weakKeys ? new LookupKey(key) : key );
+	}
+
+	private Stripe stripeFor(Object mapKey) {
+		int _h = mapKey.hashCode();
+		_h ^= (_h >>> 16);
+		return stripes[_h & (stripes.length - 1)];
+	}
+
+	private static final class CacheEntry<V> {
+
+		private final V value;
+		private final SoftReference<V> softValue;
+		int frequency;
+
+		CacheEntry(V value, boolean soft) {
+			this.value = ( soft ? null : value );
+			this.softValue = ( soft ? new SoftReference<V>(value) : null );
+		}
+
+		V get() {
+			return ( softValue != null ? softValue.get() : value );
+		}
+	}
+
+	/**
+	 * Identity-compared weak key. A collected key only equals itself, so it can still be removed
+	 */
+	private static final class WeakKey extends WeakReference<Object> {
+
+		private final int hash;
+
+		WeakKey(Object key, ReferenceQueue<Object> queue) {
+			super(key, queue);
+			this.hash = System.identityHashCode(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if ( obj == this ) return true;
+			Object _key = get();
+			if ( _key == null ) return false;
+			if ( obj instanceof WeakKey ) return _key == ((WeakKey) obj).get();
+			if ( obj instanceof LookupKey ) return _key == ((LookupKey) obj).key;
+			return false;
+		}
+	}
+
+	/**
+	 * Strong identity key used for lookups only
+	 */
+	private static final class LookupKey {
+
+		private final Object key;
+
+		LookupKey(Object key) {
+			this.key = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(key);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if ( obj instanceof WeakKey ) return key == ((WeakKey) obj).get();
+			if ( obj instanceof LookupKey ) return key == ((LookupKey) obj).key;
+			return false;
+		}
+	}
+
+	/**
+	 * Access-ordered map, eldest entries are the least recently used
+	 */
+	private final class Stripe extends LinkedHashMap<Object, CacheEntry<V>> {
+
+		private static final long serialVersionUID = 1L;
+		private final int maxEntries;
+		private int insertsSinceAging;
+
+		Stripe(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		void evictIfFull() {
+			if ( ++insertsSinceAging > maxEntries * 10 ) {
+				insertsSinceAging = 0;
+				for ( CacheEntry<V> _e : values() ) {
+					_e.frequency >>>= 1;
+				}
+			}
+			while ( size() > maxEntries ) {
+				Object _victim = null;
+				int _victimFrequency = Integer.MAX_VALUE;
+				int _seen = 0;
+				for ( Map.Entry<Object, CacheEntry<V>> _e : entrySet() ) {
+					// the newest entry sits at the tail, it is never a candidate while it competes
+					if ( _seen++ == EVICTION_CANDIDATES || _seen == size() ) break;
+					if ( _e.getValue().frequency < _victimFrequency ) {
+						_victim = _e.getKey();
+						_victimFrequency = _e.getValue().frequency;
+					}
+				}
+				if ( _victim == null ) break;
+				remove(_victim);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package com.greatnowhere.utils;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reflective equals(), hashCode() and toString() for value classes, e.g.
+ * <pre>
+ * public boolean equals(Object o) { return ObjectMethods.equals(this, o); }
+ * public int hashCode() { return ObjectMethods.hashCode(this); }
+ * </pre>
+ * Field plans are built once per class over all non-static, non-transient fields of the class hierarchy,
+ * or only over fields carrying a given annotation. Each plan compiles into a single method handle, so
+ * equals() and hashCode() neither box primitives nor allocate.
+ * Primitives compare like their wrappers' equals(), references with equals(), arrays by content.
+ */
+public class ObjectMethods {
+
+	// source class -> annotation filter (Annotation.class for all fields) -> plan
+	private static final MetadataCache<Class<?>, Map<Class<?>, Plan>> plans =
+			new MetadataCache<Class<?>, Map<Class<?>, Plan>>(4096);
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	public static boolean equals(Object a, Object b) {
+		return equals(a, b, null);
+	}
+
+	/**
+	 * Compares fields of two objects of the same class
+	 * @param a
+	 * @param b
+	 * @param only compare fields with this annotation, null for all fields
+	 * @return true if same class and all planned fields equal
+	 */
+	public static boolean equals(Object a, Object b, Class<? extends Annotation> annotation) {
+		if ( a == b ) return true;
+		if ( a == null || b == null || a.getClass() != b.getClass() ) return false;
+		try {
+			return (boolean) plan(a.getClass(), annotation).equals.invokeExact(a, b);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Cannot compare " + a.getClass().getName(), t);
+		}
+	}
+
+	public static int hashCode(Object o) {
+		return hashCode(o, null);
+	}
+
+	/**
+	 * Computes hash code the way java.util.Arrays.hashCode would over planned field values
+	 * @param o
+	 * @param only hash fields with this annotation, null for all fields
+	 * @return hash code, 0 for null
+	 */
+	public static int hashCode(Object o, Class<? extends Annotation> annotation) {
+		if ( o == null ) return 0;
+		try {
+			return (int) plan(o.getClass(), annotation).hashCode.invokeExact(o);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Cannot hash " + o.getClass().getName(), t);
+		}
+	}
+
+	public static String toString(Object o) {
+		return toString(o, null);
+	}
+
+	/**
+	 * Formats object as SimpleClassName[field=value, field=value]
+	 * @param o
+	 * @param only include fields with this annotation, null for all fields
+	 * @return string, "null" for null
+	 */
+	public static String toString(Object o, Class<? extends Annotation> annotation) {
+		if ( o == null ) return "null";
+		Plan _plan = plan(o.getClass(), annotation);
+		// presized from the last result, so the builder rarely grows
+		StringBuilder _sb = new StringBuilder(_plan.lastLength + 16);
+		try {
+			_plan.toString.invokeExact(_sb, o);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Cannot format " + o.getClass().getName(), t);
+		}
+		_plan.lastLength = _sb.length();
+		return _sb.toString();
+	}
+
+	private static Plan plan(Class<?> cls, Class<? extends Annotation> annotation) {
+		Map<Class<?>, Plan> _byAnnotation = plans.getIfPresent(cls);
+		if ( _byAnnotation == null ) {
+			_byAnnotation = new ConcurrentHashMap<Class<?>, Plan>();
+			plans.put(cls, _byAnnotation);
+		}
+		Class<?> _key = ( annotation == null ? Annotation.class : annotation );
+		Plan _retval = _byAnnotation.get(_key);
+		if ( _retval == null ) {
+			_retval = new Plan(cls, annotation);
+			_byAnnotation.put(_key, _retval);
+		}
+		return _retval;
+	}
+
+	/**
+	 * Compiled field plan of one class
+	 */
+	private static final class Plan {
+
+		// (Object, Object)boolean
+		final MethodHandle equals;
+		// (Object)int
+		final MethodHandle hashCode;
+		// (StringBuilder, Object)void
+		final MethodHandle toString;
+		volatile int lastLength = 16;
+
+		Plan(Class<?> cls, Class<? extends Annotation> annotation) {
+			List<Field> _fields = new ArrayList<Field>();
+			List<Class<?>> _hierarchy = new ArrayList<Class<?>>();
+			for ( Class<?> _c = cls; _c != null && _c != Object.class; _c = _c.getSuperclass() ) {
+				_hierarchy.add(0, _c);
+			}
+			// superclass fields first, as they would be printed by hand
+			for ( Class<?> _c : _hierarchy ) {
+				for ( Field _f : _c.getDeclaredFields() ) {
+					int _mod = _f.getModifiers();
+					if ( Modifier.isStatic(_mod) || Modifier.isTransient(_mod) || _f.isSynthetic() ) continue;
+					if ( annotation != null && _f.getAnnotation(annotation) == null ) continue;
+					_f.setAccessible(true);
+					_fields.add(_f);
+				}
+			}
+			try {
+				MethodHandle _eq = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0, Object.class, Object.class);
+				MethodHandle _false = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, Object.class, Object.class);
+				MethodHandle _hash = MethodHandles.dropArguments(MethodHandles.constant(int.class, 1), 0, Object.class);
+				MethodHandle _str = lookup.findStatic(ObjectMethods.class, "appendSuffix", MethodType.methodType(void.class, StringBuilder.class, Object.class));
+				MethodHandle _hashStep = lookup.findStatic(ObjectMethods.class, "hashStep", MethodType.methodType(int.class, int.class, int.class));
+
+				MethodHandle[] _getters = new MethodHandle[_fields.size()];
+				Class<?>[] _kinds = new Class<?>[_fields.size()];
+				for ( int i=0; i<_getters.length; i++ ) {
+					Class<?> _type = _fields.get(i).getType();
+					_kinds[i] = ( _type.isPrimitive() ? _type : Object.class );
+					_getters[i] = lookup.unreflectGetter(_fields.get(i)).asType(MethodType.methodType(_kinds[i], Object.class));
+				}
+
+				// 31 * hash(previous fields) + hash(f), same result as Arrays.hashCode over field values
+				for ( int i=0; i<_getters.length; i++ ) {
+					MethodHandle _fieldHash = MethodHandles.filterReturnValue(_getters[i],
+							lookup.findStatic(ObjectMethods.class, "fieldHash", MethodType.methodType(int.class, _kinds[i])));
+					_hash = MethodHandles.foldArguments(
+							MethodHandles.filterArguments(_hashStep, 1, _fieldHash), _hash);
+				}
+
+				// built from the last field back, so the first field is compared and printed first
+				for ( int i=_getters.length-1; i>=0; i-- ) {
+					Field _f = _fields.get(i);
+					Class<?> _kind = _kinds[i];
+					MethodHandle _get = _getters[i];
+
+					// a.f == b.f, then the rest, else false
+					MethodHandle _fieldEq = MethodHandles.filterArguments(
+							lookup.findStatic(ObjectMethods.class, "fieldEquals", MethodType.methodType(boolean.class, _kind, _kind)),
+							0, _get, _get);
+					_eq = MethodHandles.guardWithTest(_fieldEq, _eq, _false);
+
+					// ", name=value" or "name=value"
+					MethodHandle _append = MethodHandles.filterArguments(
+							lookup.findStatic(ObjectMethods.class, "appendField", MethodType.methodType(void.class, StringBuilder.class, String.class, _kind)),
+							2, _get);
+					_append = MethodHandles.insertArguments(_append, 1, ( i == 0 ? "" : ", " ) + _f.getName() + "=");
+					_str = MethodHandles.foldArguments(_str, _append);
+				}
+				this.equals = _eq;
+				this.hashCode = _hash;
+				MethodHandle _prefix = MethodHandles.insertArguments(
+						lookup.findStatic(ObjectMethods.class, "appendPrefix", MethodType.methodType(void.class, StringBuilder.class, String.class)),
+						1, cls.getSimpleName() + "[");
+				this.toString = MethodHandles.foldArguments(_str, _prefix);
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("Cannot access fields of " + cls.getName(), e);
+			}
+		}
+	}
+
+	static int hashStep(int acc, int h) {
+		return 31 * acc + h;
+	}
+
+	static void appendPrefix(StringBuilder sb, String prefix) {
+		sb.append(prefix);
+	}
+
+	static void appendSuffix(StringBuilder sb, Object o) {
+		sb.append(']');
+	}
+
+	static boolean fieldEquals(boolean a, boolean b) { return a == b; }
+	static boolean fieldEquals(byte a, byte b) { return a == b; }
+	static boolean fieldEquals(char a, char b) { return a == b; }
+	static boolean fieldEquals(short a, short b) { return a == b; }
+	static boolean fieldEquals(int a, int b) { return a == b; }
+	static boolean fieldEquals(long a, long b) { return a == b; }
+	static boolean fieldEquals(float a, float b) { return Float.floatToIntBits(a) == Float.floatToIntBits(b); }
+	static boolean fieldEquals(double a, double b) { return Double.doubleToLongBits(a) == Double.doubleToLongBits(b); }
+
+	static boolean fieldEquals(Object a, Object b) {
+		if ( a == b ) return true;
+		if ( a == null || b == null ) return false;
+		if ( a.getClass().isArray() && b.getClass() == a.getClass() ) {
+			if ( a instanceof Object[] ) return Arrays.deepEquals((Object[]) a, (Object[]) b);
+			if ( a instanceof int[] ) return Arrays.equals((int[]) a, (int[]) b);
+			if ( a instanceof long[] ) return Arrays.equals((long[]) a, (long[]) b);
+			if ( a instanceof byte[] ) return Arrays.equals((byte[]) a, (byte[]) b);
+			if ( a instanceof char[] ) return Arrays.equals((char[]) a, (char[]) b);
+			if ( a instanceof double[] ) return Arrays.equals((double[]) a, (double[]) b);
+			if ( a instanceof float[] ) return Arrays.equals((float[]) a, (float[]) b);
+			if ( a instanceof short[] ) return Arrays.equals((short[]) a, (short[]) b);
+			if ( a instanceof boolean[] ) return Arrays.equals((boolean[]) a, (boolean[]) b);
+		}
+		return a.equals(b);
+	}
+
+	static int fieldHash(boolean v) { return ( v ? 1231 : 1237 ); }
+	static int fieldHash(byte v) { return v; }
+	static int fieldHash(char v) { return v; }
+	static int fieldHash(short v) { return v; }
+	static int fieldHash(int v) { return v; }
+	static int fieldHash(long v) { return (int) (v ^ (v >>> 32)); }
+	static int fieldHash(float v) { return Float.floatToIntBits(v); }
+	static int fieldHash(double v) { return fieldHash(Double.doubleToLongBits(v)); }
+
+	static int fieldHash(Object v) {
+		if ( v == null ) return 0;
+		if ( v instanceof Object[] ) return Arrays.deepHashCode((Object[]) v);
+		if ( v instanceof int[] ) return Arrays.hashCode((int[]) v);
+		if ( v instanceof long[] ) return Arrays.hashCode((long[]) v);
+		if ( v instanceof byte[] ) return Arrays.hashCode((byte[]) v);
+		if ( v instanceof char[] ) return Arrays.hashCode((char[]) v);
+		if ( v instanceof double[] ) return Arrays.hashCode((double[]) v);
+		if ( v instanceof float[] ) return Arrays.hashCode((float[]) v);
+		if ( v instanceof short[] ) return Arrays.hashCode((short[]) v);
+		if ( v instanceof boolean[] ) return Arrays.hashCode((boolean[]) v);
+		return v.hashCode();
+	}
+
+	static void appendField(StringBuilder sb, String label, boolean v) { sb.append(label).append(v); }
+	static void appendField(StringBuilder sb, String label, byte v) { sb.append(label).append(v); }
+	static void appendField(StringBuilder sb, String label, char v) { sb.append(label).append(v); }
+	static void appendField(StringBuilder sb, String label, short v) { sb.append(label).append(v); }
+	static void appendField(StringBuilder sb, String label, int v) { sb.append(label).append(v); }
+	static void appendField(StringBuilder sb, String label, long v) { sb.append(label).append(v); }
+	static void appendField(StringBuilder sb, String label, float v) { sb.append(label).append(v); }
+	static void appendField(StringBuilder sb, String label, double v) { sb.append(label).append(v); }
+
+	static void appendField(StringBuilder sb, String label, Object v) {
+		sb.append(label);
+		if ( v instanceof Object[] ) sb.append(Arrays.deepToString((Object[]) v));
+		else if ( v instanceof int[] ) sb.append(Arrays.toString((int[]) v));
+		else if ( v instanceof long[] ) sb.append(Arrays.toString((long[]) v));
+		else if ( v instanceof byte[] ) sb.append(Arrays.toString((byte[]) v));
+		else if ( v instanceof char[] ) sb.append(Arrays.toString((char[]) v));
+		else if ( v instanceof double[] ) sb.append(Arrays.toString((double[]) v));
+		else if ( v instanceof float[] ) sb.append(Arrays.toString((float[]) v));
+		else if ( v instanceof short[] ) sb.append(Arrays.toString((short[]) v));
+		else if ( v instanceof boolean[] ) sb.append(Arrays.toString((boolean[]) v));
+		else sb.append(v);
+	}
+}
@@ -0,0 +1,342 @@
+package com.greatnowhere.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled nested property expression, e.g. order.customer.address.city, items[0].name or attributes[color].
+ * Properties resolve like {@link Reflection#getFieldValue(Object, String)}: public field first, then public getter.
+ * Bracket index selects List or array element, on a Map the bracket content (optionally quoted) is the key.
+ * A Map can also be navigated with property syntax, attributes.color is the same as attributes[color].
+ *
+ * Navigation is null-safe: reading returns null if any intermediate value is null or a property cannot be
+ * resolved, writing is skipped in the same cases, as Reflection.setFieldValue does. Of overloaded setters
+ * the one taking the runtime type of the value is used, else the first one the value can be passed to.
+ * Expressions are parsed once and cached. Accessors are resolved once per class and property name and kept
+ * with the class, each property segment weakly remembers the last one, so evaluation does not allocate and
+ * cached paths do not keep classes (and their class loaders) from being unloaded.
+ */
+public class PropertyPath {
+
+	private static final MetadataCache<String, PropertyPath> cache = new MetadataCache<String, PropertyPath>(4096, false);
+	// class -> property name -> accessor, shared by all segments
+	private static final ClassValue<Map<String, Accessor>> accessors = new ClassValue<Map<String, Accessor>>() {
+		@Override
+		protected Map<String, Accessor> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<String, Accessor>();
+		}
+	};
+
+	private final String expression;
+	private final Segment[] segments;
+
+	/**
+	 * Returns compiled, cached path for an expression
+	 * @param expression
+	 * @return compiled path
+	 * @throws IllegalArgumentException if expression is malformed
+	 */
+	public static PropertyPath compile(String expression) {
+		PropertyPath _retval = cache.getIfPresent(expression);
+		if ( _retval == null ) {
+			_retval = new PropertyPath(expression);
+			cache.put(expression, _retval);
+		}
+		return _retval;
+	}
+
+	private PropertyPath(String expression) {
+		this.expression = expression;
+		this.segments = parse(expression);
+	}
+
+	/**
+	 * Reads value at the end of the path
+	 * @param root object
+	 * @return value, or null if unresolvable
+	 */
+	public Object getValue(Object root) {
+		Object _current = root;
+		for ( int i=0; i<segments.length && _current != null; i++ ) {
+			_current = segments[i].get(_current);
+		}
+		return _current;
+	}
+
+	/**
+	 * Writes value at the end of the path. Does nothing if an intermediate value is null
+	 * @param root object
+	 * @param new value
+	 */
+	public void setValue(Object root, Object value) {
+		Object _current = root;
+		int _last = segments.length - 1;
+		for ( int i=0; i<_last && _current != null; i++ ) {
+			_current = segments[i].get(_current);
+		}
+		if ( _current != null ) {
+			segments[_last].set(_current, value);
+		}
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	private static Segment[] parse(String expression) {
+		if ( expression == null || expression.length() == 0 ) {
+			throw new IllegalArgumentException("Empty property path");
+		}
+		List<Segment> _retval = new ArrayList<Segment>();
+		int _len = expression.length();
+		int i = 0;
+		while ( i < _len ) {
+			char _c = expression.charAt(i);
+			if ( _c == '[' ) {
+				int _end = expression.indexOf(']', i);
+				if ( _end == -1 ) {
+					throw new IllegalArgumentException("Unclosed [ in property path " + expression);
+				}
+				_retval.add(new IndexSegment(unquote(expression.substring(i + 1, _end).trim())));
+				i = _end + 1;
+				if ( i < _len && expression.charAt(i) == '.' ) i++;
+			} else {
+				int _end = i;
+				while ( _end < _len && expression.charAt(_end) != '.' && expression.charAt(_end) != '[' ) {
+					_end++;
+				}
+				if ( _end == i ) {
+					throw new IllegalArgumentException("Empty property name at " + i + " in property path " + expression);
+				}
+				_retval.add(new PropertySegment(expression.substring(i, _end)));
+				i = _end;
+				if ( i < _len && expression.charAt(i) == '.' ) {
+					i++;
+					if ( i == _len ) {
+						throw new IllegalArgumentException("Property path ends with . " + expression);
+					}
+				}
+			}
+		}
+		return _retval.toArray(new Segment[_retval.size()]);
+	}
+
+	private static String unquote(String s) {
+		if ( s.length() >= 2 && ( s.charAt(0) == '\'' || s.charAt(0) == '"' ) && s.charAt(s.length() - 1) == s.charAt(0) ) {
+			return s.substring(1, s.length() - 1);
+		}
+		return s;
+	}
+
+	private static abstract class Segment {
+		abstract Object get(Object target);
+		abstract void set(Object target, Object value);
+	}
+
+	/**
+	 * [index] or [key]
+	 */
+	private static final class IndexSegment extends Segment {
+
+		private final String key;
+		private final int index;
+
+		IndexSegment(String key) {
+			this.key = key;
+			int _index;
+			try {
+				_index = Integer.parseInt(key);
+			} catch (NumberFormatException e) {
+				_index = -1;
+			}
+			this.index = _index;
+		}
+
+		@Override
+		Object get(Object target) {
+			if ( target instanceof Map ) {
+				return ((Map<?, ?>) target).get(key);
+			}
+			if ( index < 0 ) return null;
+			if ( target instanceof List ) {
+				List<?> _list = (List<?>) target;
+				return ( index < _list.size() ? _list.get(index) : null );
+			}
+			if ( target.getClass().isArray() ) {
+				return ( index < Array.getLength(target) ? Array.get(target, index) : null );
+			}
+			return null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		void set(Object target, Object value) {
+			if ( target instanceof Map ) {
+				((Map<Object, Object>) target).put(key, value);
+			} else if ( index < 0 ) {
+				return;
+			} else if ( target instanceof List ) {
+				List<Object> _list = (List<Object>) target;
+				if ( index < _list.size() ) _list.set(index, value);
+			} else if ( target.getClass().isArray() ) {
+				if ( index < Array.getLength(target) ) Array.set(target, index, value);
+			}
+		}
+	}
+
+	/**
+	 * Property name, resolved per class of the object it is applied to
+	 */
+	private static final class PropertySegment extends Segment {
+
+		private final String name;
+		// last resolved accessor, avoids map lookup for monomorphic paths. Weak, paths are cached strongly
+		private volatile WeakReference<Accessor> last;
+
+		PropertySegment(String name) {
+			this.name = name;
+		}
+
+		@Override
+		Object get(Object target) {
+			if ( target instanceof Map ) {
+				return ((Map<?, ?>) target).get(name);
+			}
+			MethodHandle _getter = accessor(target.getClass()).getter;
+			if ( _getter == null ) return null;
+			try {
+				return (Object) _getter.invokeExact(target);
+			} catch (Throwable t) {
+				return null;
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		void set(Object target, Object value) {
+			if ( target instanceof Map ) {
+				((Map<Object, Object>) target).put(name, value);
+				return;
+			}
+			MethodHandle _setter = accessor(target.getClass()).setterFor(value);
+			if ( _setter == null ) return;
+			try {
+				_setter.invokeExact(target, value);
+			} catch (Throwable t) {
+			}
+		}
+
+		private Accessor accessor(Class<?> cls) {
+			WeakReference<Accessor> _last = last;
+			Accessor _retval = ( _last == null ? null : _last.get() );
+			if ( _retval != null && _retval.cls == cls ) {
+				return _retval;
+			}
+			Map<String, Accessor> _byName = accessors.get(cls);
+			_retval = _byName.get(name);
+			if ( _retval == null ) {
+				_retval = new Accessor(cls, name);
+				_byName.put(name, _retval);
+			}
+			last = new WeakReference<Accessor>(_retval);
+			return _retval;
+		}
+	}
+
+	/**
+	 * (Object)Object getter and (Object, Object)void setters of one property on one class.
+	 * Getter can be null, setters can be empty
+	 */
+	private static final class Accessor {
+
+		final Class<?> cls;
+		final MethodHandle getter;
+		// parallel arrays, boxed parameter type -> setter
+		final Class<?>[] setterTypes;
+		final MethodHandle[] setters;
+
+		Accessor(Class<?> cls, String name) {
+			this.cls = cls;
+			MethodHandles.Lookup _lookup = MethodHandles.lookup();
+			String _suffix = name.substring(0, 1).toUpperCase() + name.substring(1);
+			MethodHandle _getter = null;
+			List<Class<?>> _setterTypes = new ArrayList<Class<?>>();
+			List<MethodHandle> _setters = new ArrayList<MethodHandle>();
+			try {
+				Field _fld = cls.getField(name);
+				if ( !Modifier.isStatic(_fld.getModifiers()) ) {
+					_fld.setAccessible(true);
+					_getter = _lookup.unreflectGetter(_fld);
+					if ( !Modifier.isFinal(_fld.getModifiers()) ) {
+						_setterTypes.add(_fld.getType());
+						_setters.add(_lookup.unreflectSetter(_fld));
+					}
+				}
+			} catch (NoSuchFieldException e) {
+			} catch (IllegalAccessException e) {
+			}
+			try {
+				if ( _getter == null ) {
+					Method _m = cls.getMethod("get" + _suffix);
+					_m.setAccessible(true);
+					_getter = _lookup.unreflect(_m);
+				}
+			} catch (NoSuchMethodException e) {
+			} catch (IllegalAccessException e) {
+			}
+			if ( _setters.isEmpty() ) {
+				for ( Method _m : cls.getMethods() ) {
+					if ( _m.getName().equals("set" + _suffix) && _m.getParameterTypes().length == 1
+							&& !Modifier.isStatic(_m.getModifiers()) ) {
+						try {
+							_m.setAccessible(true);
+							_setters.add(_lookup.unreflect(_m));
+							_setterTypes.add(_m.getParameterTypes()[0]);
+						} catch (IllegalAccessException e) {
+						}
+					}
+				}
+			}
+			this.getter = ( _getter == null ? null : _getter.asType(MethodType.methodType(Object.class, Object.class)) );
+			this.setterTypes = new Class<?>[_setters.size()];
+			this.setters = new MethodHandle[_setters.size()];
+			for ( int i=0; i<setters.length; i++ ) {
+				setterTypes[i] = MethodType.methodType(_setterTypes.get(i)).wrap().returnType();
+				setters[i] = _setters.get(i).asType(MethodType.methodType(void.class, Object.class, Object.class));
+			}
+		}
+
+		/**
+		 * @param value to be set
+		 * @return setter taking the runtime type of value, else the first one value can be passed to, or null
+		 */
+		MethodHandle setterFor(Object value) {
+			if ( setters.length == 1 ) return setters[0];
+			if ( value == null ) {
+				return ( setters.length == 0 ? null : setters[0] );
+			}
+			Class<?> _type = value.getClass();
+			MethodHandle _retval = null;
+			for ( int i=0; i<setters.length; i++ ) {
+				if ( setterTypes[i] == _type ) return setters[i];
+				if ( _retval == null && setterTypes[i].isInstance(value) ) _retval = setters[i];
+			}
+			return _retval;
+		}
+	}
+}
@@ -9,8 +9,11 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,8 +23,56 @@ public class Reflection {
 
 	/**
 	 * Will contain classloader that is to be used by all other classes
+	 * @deprecated pins the context classloader current when this class was initialized, use {@link #getClassLoader()}
 	 */
+	@Deprecated
 	public static final ClassLoader classLoader = Thread.currentThread().getContextClassLoader(); 
+
+	/**
+	 * Per-class reflection metadata. Kept with the class itself, so it goes away together with the class
+	 * and classes of reloaded classloaders can be unloaded, although metadata references its class
+	 */
+	private static final ClassValue<ClassMetadata> metadata = new ClassValue<ClassMetadata>() {
+		@Override
+		protected ClassMetadata computeValue(Class<?> type) {
+			return new ClassMetadata(type);
+		}
+	};
+
+	private static final MetadataCache<Class<?>, ?> emptyMetadataCache = new MetadataCache<Class<?>, Object>(1);
+
+	/**
+	 * Returns classloader that is to be used by all other classes: context classloader of the calling thread,
+	 * or the one captured at startup if the thread has none
+	 * @return classloader
+	 */
+	@SuppressWarnings("deprecation")
+	public static ClassLoader getClassLoader() {
+		ClassLoader _retval = Thread.currentThread().getContextClassLoader();
+		return ( _retval == null ? classLoader : _retval );
+	}
+
+	/**
+	 * @return always empty cache
+	 * @deprecated metadata is kept with each class and unloaded with it, there is nothing to invalidate after
+	 * undeploy. Use {@link #invalidate(Class)} to drop metadata of a single class
+	 */
+	@Deprecated
+	public static MetadataCache<Class<?>, ?> getMetadataCache() {
+		return emptyMetadataCache;
+	}
+
+	/**
+	 * Drops cached methods, fields, annotated member and type argument lookups of a class
+	 * @param cls
+	 */
+	public static void invalidate(Class<?> cls) {
+		metadata.remove(cls);
+	}
+
+	static ClassMetadata metadata(Class<?> cls) {
+		return metadata.get(cls);
+	}
 	
 	/**
 	 * Reflectively calls specified method on specified class instance with specified parms
@@ -87,7 +138,7 @@ public class Reflection {
 	 */
 	public static Method findMethod(Object instance, String methodName, Object... parms) {
 		
-		Method[] _meths = ( instance instanceof Class<?> ? ((Class <?>) instance).getMethods() : instance.getClass().getMethods()); 
+		Method[] _meths = metadata( instance instanceof Class<?> ? (Class <?>) instance : instance.getClass()).getMethods(); 
 		return findMethod(methodName, _meths, parms);
 		
 	}
@@ -102,7 +153,7 @@ public class Reflection {
 	 */
 	public static Method findDeclaredMethod(Object instance, String methodName, Object... parms) {
 		
-		Method[] _meths = instance.getClass().getDeclaredMethods();
+		Method[] _meths = metadata(instance.getClass()).getDeclaredMethods();
 		return findMethod(methodName, _meths, parms);
 		
 	}
@@ -172,12 +223,15 @@ public class Reflection {
 	 * @return Array of Strings containing field names
 	 */
 	public static String[] getAnnotatedFields(Class<?> cls, Class<? extends Annotation> annotationClass, String annotationField, Object annotationFieldValue) {
+		ClassMetadata _meta = metadata(cls);
+		List<Object> _key = Arrays.asList("annotatedFields", annotationClass, annotationField, annotationFieldValue);
+		String[] _cached = (String[]) _meta.getDerived(_key);
+		if ( _cached != null ) {
+			return _cached.clone();
+		}
 		ArrayList<String> _retval = new ArrayList<String>();
 		// inspect all fields
-		Field[] _flds;
-		synchronized (cls) {
-			_flds = cls.getFields();
-		}
+		Field[] _flds = _meta.getFields();
 		for ( int i=0; i<_flds.length; i++ ) {
 	
 			Object _annFieldValue = Reflection.getFieldAnnotationValue(cls, _flds[i].getName(), annotationClass, annotationField);
@@ -188,7 +242,9 @@ public class Reflection {
 			}
 					
 		} // for
-		return _retval.toArray(new String[] {});
+		String[] _result = _retval.toArray(new String[] {});
+		_meta.putDerived(_key, _result);
+		return _result.clone();
 	}
 
 	/**
@@ -198,16 +254,24 @@ public class Reflection {
 	 * @return array of Fields that extend specified interface or class
 	 */
 	public static Field[] getFieldsImplementing(Class<?> cls, Class<?> extendingClass) {
+		ClassMetadata _meta = metadata(cls);
+		List<Object> _key = Arrays.<Object>asList("fieldsImplementing", extendingClass);
+		Field[] _cached = (Field[]) _meta.getDerived(_key);
+		if ( _cached != null ) {
+			return _cached.clone();
+		}
 		ArrayList<Field> _retval = new ArrayList<Field>();
 		// inspect all fields
-		Field[] _flds = cls.getFields();
+		Field[] _flds = _meta.getFields();
 		for ( Field field : _flds ) {
 			Class<?> _cls = field.getType();
 			if ( extendingClass.isAssignableFrom(_cls) ) {
 				_retval.add(field);
 			}
 		}
-		return _retval.toArray(new Field[] {});
+		Field[] _result = _retval.toArray(new Field[] {});
+		_meta.putDerived(_key, _result);
+		return _result.clone();
 	}
 
 	/**
@@ -255,12 +319,16 @@ public class Reflection {
 	 */
 	public static String[] getAnnotatedMethods(Class<?> cls, Class<? extends Annotation> annotationClass,
 			String annotationField, Object annotationFieldValue, Class<?>... methodParms) {
+		ClassMetadata _meta = metadata(cls);
+		List<Object> _key = Arrays.asList("annotatedMethods", annotationClass, annotationField, annotationFieldValue, 
+				Arrays.asList(methodParms));
+		String[] _cached = (String[]) _meta.getDerived(_key);
+		if ( _cached != null ) {
+			return _cached.clone();
+		}
 		ArrayList<String> _retval = new ArrayList<String>();
 
-		Method[] _methods;
-		synchronized (cls) {
-			_methods = cls.getMethods();
-		}
+		Method[] _methods = _meta.getMethods();
 		
 		for ( int i=0; i<_methods.length; i++) {
 		
@@ -273,7 +341,9 @@ public class Reflection {
 			}
 					
 		} // for
-		return _retval.toArray(new String[] {});
+		String[] _result = _retval.toArray(new String[] {});
+		_meta.putDerived(_key, _result);
+		return _result.clone();
 	}
 
 	/**
@@ -414,9 +484,29 @@ public class Reflection {
 				
 			}
 		}
-		
+
 	}
-	
+
+	/**
+	 * Returns value of nested property path, such as order.customer.address.city or items[0].name
+	 * @param target
+	 * @param property path, see {@link PropertyPath}
+	 * @return value, or null if any part of the path is null or cannot be resolved
+	 */
+	public static Object getPropertyValue(Object target, String path) {
+		return PropertyPath.compile(path).getValue(target);
+	}
+
+	/**
+	 * Sets value of nested property path. Does nothing if any intermediate part of the path is null
+	 * @param target
+	 * @param property path, see {@link PropertyPath}
+	 * @param newVal
+	 */
+	public static void setPropertyValue(Object target, String path, Object newVal) {
+		PropertyPath.compile(path).setValue(target, newVal);
+	}
+
 	/**
 	 * Returns field value of an object. Works also on protected fields
 	 * @param obj
@@ -499,8 +589,15 @@ public class Reflection {
 	   * @param childClass the child class
 	   * @return a list of the raw classes for the actual type arguments.
 	   */
+	  @SuppressWarnings("unchecked")
 	  public static <T> List<Class<?>> getTypeArguments(
 	    Class<T> baseClass, Class<?> childClass) {
+	    ClassMetadata meta = metadata(childClass);
+	    List<Object> key = Arrays.<Object>asList("typeArguments", baseClass);
+	    List<Class<?>> cached = (List<Class<?>>) meta.getDerived(key);
+	    if (cached != null) {
+	      return new ArrayList<Class<?>>(cached);
+	    }
 	    Map<Type, Type> resolvedTypes = new HashMap<Type, Type>();
 	    Type type = childClass;
 	    // start walking up the inheritance hierarchy until we hit baseClass
@@ -542,7 +639,95 @@ public class Reflection {
 	      }
 	      typeArgumentsAsClasses.add(getClass(baseType));
 	    }
+	    meta.putDerived(key, new ArrayList<Class<?>>(typeArgumentsAsClasses));
 	    return typeArgumentsAsClasses;
 	  }
 
+	/**
+	 * Lazily resolved metadata of one class. Derived lookups are keyed by lists of their arguments,
+	 * at most MAX_DERIVED of them are kept per class, least recently used are dropped first.
+	 * Lookups whose arguments the class cannot see are not kept, they would pin the arguments' classloader
+	 */
+	static final class ClassMetadata {
+
+		static final int MAX_DERIVED = 64;
+
+		private final Class<?> type;
+		private volatile Method[] methods;
+		private volatile Method[] declaredMethods;
+		private volatile Field[] fields;
+		private final Map<Object, Object> derived = Collections.synchronizedMap(new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+				return size() > MAX_DERIVED;
+			}
+		});
+
+		ClassMetadata(Class<?> type) {
+			this.type = type;
+		}
+
+		Method[] getMethods() {
+			Method[] _retval = methods;
+			if ( _retval == null ) {
+				synchronized (type) {
+					_retval = type.getMethods();
+				}
+				methods = _retval;
+			}
+			return _retval;
+		}
+
+		Method[] getDeclaredMethods() {
+			Method[] _retval = declaredMethods;
+			if ( _retval == null ) {
+				_retval = type.getDeclaredMethods();
+				declaredMethods = _retval;
+			}
+			return _retval;
+		}
+
+		Field[] getFields() {
+			Field[] _retval = fields;
+			if ( _retval == null ) {
+				synchronized (type) {
+					_retval = type.getFields();
+				}
+				fields = _retval;
+			}
+			return _retval;
+		}
+
+		Object getDerived(Object key) {
+			return derived.get(key);
+		}
+
+		void putDerived(Object key, Object value) {
+			if ( isVisible(key) ) {
+				derived.put(key, value);
+			}
+		}
+
+		/**
+		 * @return true if classes of key and its list elements are loaded by the loader of type or its parents
+		 */
+		private boolean isVisible(Object key) {
+			if ( key == null ) return true;
+			if ( key instanceof List ) {
+				for ( Object _o : (List<?>) key ) {
+					if ( !isVisible(_o) ) return false;
+				}
+				return true;
+			}
+			ClassLoader _loader = ( key instanceof Class ? (Class<?>) key : key.getClass() ).getClassLoader();
+			if ( _loader == null ) return true;
+			for ( ClassLoader _l = type.getClassLoader(); _l != null; _l = _l.getParent() ) {
+				if ( _l == _loader ) return true;
+			}
+			return false;
+		}
+	}
+
 }
@@ -0,0 +1,280 @@
+package com.greatnowhere.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Pre-populates Reflection metadata at startup, so the first request against each class does not pay
+ * the reflective lookup cost. Classes found by package scans are resolved through
+ * {@link Reflection#getClassLoader()}, listed Class objects are used as given; all are warmed up in
+ * parallel on a fork-join pool.
+ * For every class the public and declared methods, public fields, their annotations and generic
+ * supertypes are resolved. Application specific lookups, e.g. getAnnotatedFields with the annotation
+ * the application uses, can be added with a {@link Warmer}.
+ */
+public class ReflectionWarmup {
+
+	/**
+	 * Additional per-class warm-up, runs on pool threads after the default metadata is resolved
+	 */
+	public interface Warmer {
+		void warmUp(Class<?> cls);
+	}
+
+	/**
+	 * Outcome of a warm-up run
+	 */
+	public static class Report {
+
+		private final Map<Class<?>, Long> timings;
+		private final Map<String, Throwable> failures;
+		private final long elapsedNanos;
+
+		Report(Map<Class<?>, Long> timings, Map<String, Throwable> failures, long elapsedNanos) {
+			this.timings = timings;
+			this.failures = failures;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return class -> warm-up time in nanoseconds, slowest first
+		 */
+		public Map<Class<?>, Long> getTimings() {
+			return timings;
+		}
+
+		/**
+		 * @return class name -> error, for classes that could not be loaded or inspected
+		 */
+		public Map<String, Throwable> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return wall clock time of the whole run in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder _sb = new StringBuilder(64 + timings.size() * 64);
+			_sb.append("Warmed up ").append(timings.size()).append(" classes in ")
+				.append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)).append("ms, ")
+				.append(failures.size()).append(" failures");
+			for ( Map.Entry<Class<?>, Long> _e : timings.entrySet() ) {
+				_sb.append("\n  ").append(_e.getKey().getName()).append(": ")
+					.append(TimeUnit.NANOSECONDS.toMicros(_e.getValue())).append("us");
+			}
+			for ( Map.Entry<String, Throwable> _e : failures.entrySet() ) {
+				_sb.append("\n  ").append(_e.getKey()).append(" failed: ").append(_e.getValue());
+			}
+			return _sb.toString();
+		}
+	}
+
+	/**
+	 * Warms up all classes found under package prefixes, using all available processors
+	 * @param package prefixes, e.g. com.greatnowhere.entities
+	 * @return report
+	 */
+	public static Report warmUpPackages(String... packagePrefixes) {
+		return warmUpPackages(Runtime.getRuntime().availableProcessors(), null, packagePrefixes);
+	}
+
+	/**
+	 * Warms up all classes found under package prefixes
+	 * @param parallelism of the fork-join pool
+	 * @param additional per-class warm-up, can be null
+	 * @param package prefixes
+	 * @return report
+	 */
+	public static Report warmUpPackages(int parallelism, Warmer warmer, String... packagePrefixes) {
+		Map<String, Throwable> _failures = new ConcurrentHashMap<String, Throwable>();
+		Set<String> _names = new LinkedHashSet<String>();
+		ClassLoader _loader = Reflection.getClassLoader();
+		for ( String _prefix : packagePrefixes ) {
+			try {
+				findClassNames(_loader, _prefix, _names);
+			} catch (IOException e) {
+				_failures.put(_prefix, e);
+			}
+		}
+		return warmUp(_names, parallelism, warmer, _failures);
+	}
+
+	/**
+	 * Warms up listed classes, using all available processors
+	 * @param classes
+	 * @return report
+	 */
+	public static Report warmUp(Collection<Class<?>> classes) {
+		return warmUp(classes, Runtime.getRuntime().availableProcessors(), null);
+	}
+
+	/**
+	 * Warms up listed classes
+	 * @param classes
+	 * @param parallelism of the fork-join pool
+	 * @param additional per-class warm-up, can be null
+	 * @return report
+	 */
+	public static Report warmUp(Collection<Class<?>> classes, int parallelism, Warmer warmer) {
+		// classes from plugin or child classloaders are warmed as given, never looked up again by name
+		return warmUp(new ArrayList<Object>(classes), parallelism, warmer, new ConcurrentHashMap<String, Throwable>());
+	}
+
+	/**
+	 * @param Class objects, or names of classes to load through Reflection.getClassLoader()
+	 */
+	private static Report warmUp(Collection<?> classes, int parallelism, final Warmer warmer,
+			final Map<String, Throwable> failures) {
+		final Map<Class<?>, Long> _timings = new ConcurrentHashMap<Class<?>, Long>();
+		final ClassLoader _loader = Reflection.getClassLoader();
+		long _start = System.nanoTime();
+		ForkJoinPool _pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			List<Future<?>> _tasks = new ArrayList<Future<?>>(classes.size());
+			for ( final Object _class : classes ) {
+				_tasks.add(_pool.submit(new Runnable() {
+					public void run() {
+						long _t = System.nanoTime();
+						String _name = ( _class instanceof Class<?> ? ((Class<?>) _class).getName() : (String) _class );
+						try {
+							Class<?> _cls = ( _class instanceof Class<?> ? (Class<?>) _class : Class.forName(_name, false, _loader) );
+							warmUpClass(_cls);
+							if ( warmer != null ) {
+								warmer.warmUp(_cls);
+							}
+							_timings.put(_cls, System.nanoTime() - _t);
+						} catch (Throwable t) {
+							failures.put(_name, t);
+						}
+					}
+				}));
+			}
+			for ( Future<?> _f : _tasks ) {
+				try {
+					_f.get();
+				} catch (Exception e) {
+					// failures are recorded by the task itself
+				}
+			}
+		} finally {
+			_pool.shutdown();
+		}
+		Report _retval = new Report(sortByTime(_timings), new LinkedHashMap<String, Throwable>(failures), System.nanoTime() - _start);
+		LogUtils.info(_retval, "Warmed up " + _timings.size() + " classes in " +
+				TimeUnit.NANOSECONDS.toMillis(_retval.getElapsedNanos()) + "ms, " + failures.size() + " failures", null);
+		return _retval;
+	}
+
+	/**
+	 * Resolves metadata Reflection caches, and lets the JVM parse annotations and generic signatures
+	 */
+	static void warmUpClass(Class<?> cls) {
+		Reflection.ClassMetadata _meta = Reflection.metadata(cls);
+		for ( Method _m : _meta.getMethods() ) {
+			_m.getAnnotations();
+		}
+		for ( Method _m : _meta.getDeclaredMethods() ) {
+			_m.getAnnotations();
+		}
+		for ( Field _f : _meta.getFields() ) {
+			_f.getAnnotations();
+			_f.getGenericType();
+		}
+		cls.getAnnotations();
+		cls.getGenericSuperclass();
+		cls.getGenericInterfaces();
+	}
+
+	private static Map<Class<?>, Long> sortByTime(Map<Class<?>, Long> timings) {
+		List<Map.Entry<Class<?>, Long>> _entries = new ArrayList<Map.Entry<Class<?>, Long>>(timings.entrySet());
+		Collections.sort(_entries, new Comparator<Map.Entry<Class<?>, Long>>() {
+			public int compare(Map.Entry<Class<?>, Long> o1, Map.Entry<Class<?>, Long> o2) {
+				return o2.getValue().compareTo(o1.getValue());
+			}
+		});
+		Map<Class<?>, Long> _retval = new LinkedHashMap<Class<?>, Long>();
+		for ( Map.Entry<Class<?>, Long> _e : _entries ) {
+			_retval.put(_e.getKey(), _e.getValue());
+		}
+		return _retval;
+	}
+
+	/**
+	 * Lists class names under a package prefix, from directories and jars of the classloader
+	 */
+	static void findClassNames(ClassLoader loader, String packagePrefix, Set<String> names) throws IOException {
+		String _path = packagePrefix.replace('.', '/');
+		Enumeration<URL> _urls = loader.getResources(_path);
+		while ( _urls.hasMoreElements() ) {
+			URL _url = _urls.nextElement();
+			if ( "file".equals(_url.getProtocol()) ) {
+				findClassNames(new File(decode(_url.getPath())), packagePrefix, names);
+			} else {
+				URLConnection _conn = _url.openConnection();
+				if ( _conn instanceof JarURLConnection ) {
+					JarFile _jar = ((JarURLConnection) _conn).getJarFile();
+					for ( Enumeration<JarEntry> _entries = _jar.entries(); _entries.hasMoreElements(); ) {
+						String _name = _entries.nextElement().getName();
+						if ( _name.startsWith(_path + "/") ) {
+							addClassName(_name.replace('/', '.'), names);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static void findClassNames(File dir, String packageName, Set<String> names) {
+		File[] _files = dir.listFiles();
+		if ( _files == null ) return;
+		for ( File _f : _files ) {
+			if ( _f.isDirectory() ) {
+				findClassNames(_f, packageName + "." + _f.getName(), names);
+			} else {
+				addClassName(packageName + "." + _f.getName(), names);
+			}
+		}
+	}
+
+	private static void addClassName(String fileName, Set<String> names) {
+		if ( fileName.endsWith(".class") && !fileName.endsWith("package-info.class") && !fileName.endsWith("module-info.class") ) {
+			names.add(fileName.substring(0, fileName.length() - ".class".length()));
+		}
+	}
+
+	private static String decode(String path) {
+		try {
+			return URLDecoder.decode(path, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			return path;
+		}
+	}
+}
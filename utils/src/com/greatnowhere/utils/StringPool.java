@@ -0,0 +1,268 @@
+package com.greatnowhere.utils;
+
+/**
+ * Bounded, lock-striped pool of canonical strings, for bulk extraction of names and words that mostly repeat.
+ * Lookups hash and compare the char range in place, a String is created only when the range is not pooled yet.
+ *
+ * Each stripe is a small open-addressed table probed a few slots deep; when all probed slots are taken the
+ * oldest of them is replaced, so the pool never grows past its capacity and keeps recently seen strings.
+ * Hit rate and an estimate of the memory saved by returning pooled instances are kept per stripe.
+ */
+public class StringPool {
+
+	public static final int DEFAULT_STRIPES = 16;
+	// slots probed per lookup
+	private static final int PROBES = 4;
+
+	private final Stripe[] stripes;
+
+	/**
+	 * @param maximum number of pooled strings
+	 */
+	public StringPool(int maxSize) {
+		int _stripes = 1;
+		while ( _stripes < DEFAULT_STRIPES && _stripes * PROBES * 2 <= maxSize ) {
+			_stripes <<= 1;
+		}
+		int _slots = PROBES;
+		while ( _slots * 2 * _stripes <= maxSize ) {
+			_slots <<= 1;
+		}
+		this.stripes = new Stripe[_stripes];
+		for ( int i=0; i<_stripes; i++ ) {
+			stripes[i] = new Stripe(_slots);
+		}
+	}
+
+	/**
+	 * @param s
+	 * @return pooled instance equal to s, or null for null
+	 */
+	public String intern(String s) {
+		if ( s == null ) return null;
+		return intern(s, 0, s.length());
+	}
+
+	/**
+	 * Returns pooled instance equal to s.subSequence(start, end), without creating the substring if already pooled
+	 * @param text
+	 * @param start index, inclusive
+	 * @param end index, exclusive
+	 * @return pooled string
+	 */
+	public String intern(CharSequence text, int start, int end) {
+		checkRange(text.length(), start, end);
+		int _hash = 0;
+		for ( int i=start; i<end; i++ ) {
+			_hash = 31 * _hash + text.charAt(i);
+		}
+		Stripe _stripe = stripeFor(_hash);
+		synchronized (_stripe) {
+			int _slot = _stripe.find(_hash, text, null, start, end);
+			if ( _slot >= 0 ) {
+				return _stripe.hit(_slot);
+			}
+			return _stripe.add(_hash, text.subSequence(start, end).toString());
+		}
+	}
+
+	/**
+	 * Returns pooled instance equal to new String(chars, start, end - start), without creating it if already pooled
+	 * @param chars
+	 * @param start index, inclusive
+	 * @param end index, exclusive
+	 * @return pooled string
+	 */
+	public String intern(char[] chars, int start, int end) {
+		checkRange(chars.length, start, end);
+		int _hash = 0;
+		for ( int i=start; i<end; i++ ) {
+			_hash = 31 * _hash + chars[i];
+		}
+		Stripe _stripe = stripeFor(_hash);
+		synchronized (_stripe) {
+			int _slot = _stripe.find(_hash, null, chars, start, end);
+			if ( _slot >= 0 ) {
+				return _stripe.hit(_slot);
+			}
+			return _stripe.add(_hash, new String(chars, start, end - start));
+		}
+	}
+
+	public int size() {
+		int _retval = 0;
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				_retval += _stripe.size;
+			}
+		}
+		return _retval;
+	}
+
+	public int getCapacity() {
+		return stripes.length * stripes[0].table.length;
+	}
+
+	public void clear() {
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				_stripe.clear();
+			}
+		}
+	}
+
+	public long getHitCount() {
+		long _retval = 0;
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				_retval += _stripe.hits;
+			}
+		}
+		return _retval;
+	}
+
+	public long getMissCount() {
+		long _retval = 0;
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				_retval += _stripe.misses;
+			}
+		}
+		return _retval;
+	}
+
+	/**
+	 * @return hits / (hits + misses), or 0 if never used
+	 */
+	public double getHitRate() {
+		long _hits = getHitCount();
+		long _total = _hits + getMissCount();
+		return ( _total == 0 ? 0 : (double) _hits / _total );
+	}
+
+	/**
+	 * Estimates heap not allocated thanks to hits: String object plus its char array, with compressed oops
+	 * @return bytes
+	 */
+	public long getBytesSaved() {
+		long _retval = 0;
+		for ( Stripe _stripe : stripes ) {
+			synchronized (_stripe) {
+				_retval += _stripe.bytesSaved;
+			}
+		}
+		return _retval;
+	}
+
+	@Override
+	public String toString() {
+		return "StringPool[size=" + size() + ", capacity=" + getCapacity() + ", hits=" + getHitCount() +
+				", misses=" + getMissCount() + ", bytesSaved=" + getBytesSaved() + "]";
+	}
+
+	private Stripe stripeFor(int hash) {
+		int _h = hash ^ (hash >>> 16);
+		return stripes[_h & (stripes.length - 1)];
+	}
+
+	private static void checkRange(int length, int start, int end) {
+		if ( start < 0 || end > length || start > end ) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+		}
+	}
+
+	/**
+	 * String header (24 bytes) and char array (16 bytes header plus chars), 8 byte aligned
+	 */
+	private static long estimateSize(int length) {
+		return 24 + ((16 + 2L * length + 7) & ~7L);
+	}
+
+	private static final class Stripe {
+
+		final String[] table;
+		// insertion order of slots, the smallest probed one is replaced when all are taken
+		final long[] stamps;
+		long clock;
+		int size;
+		long hits;
+		long misses;
+		long bytesSaved;
+
+		Stripe(int slots) {
+			this.table = new String[slots];
+			this.stamps = new long[slots];
+		}
+
+		/**
+		 * @return slot of string equal to the range, -1 if not pooled. Exactly one of text, chars is non-null
+		 */
+		int find(int hash, CharSequence text, char[] chars, int start, int end) {
+			int _mask = table.length - 1;
+			int _len = end - start;
+			// the low bits picked the stripe, so probe with the high ones
+			int _base = (hash >>> 16) ^ (hash >>> 5);
+			for ( int p=0; p<PROBES; p++ ) {
+				int _slot = (_base + p) & _mask;
+				String _s = table[_slot];
+				if ( _s == null ) return -1;
+				// String caches its hash code, so this rejects most candidates without comparing chars
+				if ( _s.hashCode() != hash || _s.length() != _len ) continue;
+				if ( chars != null ? matches(_s, chars, start) : matches(_s, text, start) ) return _slot;
+			}
+			return -1;
+		}
+
+		String hit(int slot) {
+			String _retval = table[slot];
+			hits++;
+			bytesSaved += estimateSize(_retval.length());
+			return _retval;
+		}
+
+		String add(int hash, String s) {
+			misses++;
+			int _mask = table.length - 1;
+			int _base = (hash >>> 16) ^ (hash >>> 5);
+			int _victim = -1;
+			for ( int p=0; p<PROBES; p++ ) {
+				int _slot = (_base + p) & _mask;
+				if ( table[_slot] == null ) {
+					_victim = _slot;
+					size++;
+					break;
+				}
+				if ( _victim == -1 || stamps[_slot] < stamps[_victim] ) {
+					_victim = _slot;
+				}
+			}
+			table[_victim] = s;
+			stamps[_victim] = ++clock;
+			return s;
+		}
+
+		void clear() {
+			for ( int i=0; i<table.length; i++ ) {
+				table[i] = null;
+			}
+			size = 0;
+		}
+
+		private static boolean matches(String s, CharSequence text, int start) {
+			if ( text instanceof String ) {
+				return s.regionMatches(0, (String) text, start, s.length());
+			}
+			for ( int i=0; i<s.length(); i++ ) {
+				if ( s.charAt(i) != text.charAt(start + i) ) return false;
+			}
+			return true;
+		}
+
+		private static boolean matches(String s, char[] chars, int start) {
+			for ( int i=0; i<s.length(); i++ ) {
+				if ( s.charAt(i) != chars[start + i] ) return false;
+			}
+			return true;
+		}
+	}
+}
@@ -29,6 +29,31 @@ import org.springframework.format.datetime.DateFormatter;
 
 public class Utils {
 
+	// builders larger than this are not kept for reuse
+	private static final int MAX_REUSED_BUILDER_CAPACITY = 64 * 1024;
+
+	private static final ThreadLocal<StringBuilder[]> builders = new ThreadLocal<StringBuilder[]>() {
+		@Override
+		protected StringBuilder[] initialValue() {
+			return new StringBuilder[] { new StringBuilder(256) };
+		}
+	};
+
+	/**
+	 * Returns first non-null argument. Fixed arity overloads avoid allocating a varargs array
+	 */
+	public static <T> T coalesce(T a, T b) {
+		return ( a != null ? a : b );
+	}
+
+	public static <T> T coalesce(T a, T b, T c) {
+		return ( a != null ? a : b != null ? b : c );
+	}
+
+	public static <T> T coalesce(T a, T b, T c, T d) {
+		return ( a != null ? a : b != null ? b : c != null ? c : d );
+	}
+
 	/**
 	 * Returns first non-null argument
 	 * @param args
@@ -41,6 +66,20 @@ public class Utils {
 		return null;
 	}
 	
+	/**
+	 * Returns first non-empty & non-blank string, without allocating a varargs array
+	 */
+	public static String coalesceString(String a, String b) {
+		if ( stringHasValue(a) ) return a;
+		if ( stringHasValue(b) ) return b;
+		return null;
+	}
+
+	public static String coalesceString(String a, String b, String c) {
+		if ( stringHasValue(a) ) return a;
+		return coalesceString(b, c);
+	}
+
 	/**
 	 * Returns first non-empty & non-blank string
 	 */
@@ -76,6 +115,107 @@ public class Utils {
 		return _retval;
 	}
 	
+	/**
+	 * Same as {@link #getWord(String, int)}, but returns the pooled instance of the word. Scans the sentence
+	 * in place, so a word already in the pool is returned without creating a new String
+	 * @param sentence
+	 * @param wordIndex, 0 based
+	 * @param pool
+	 * @return
+	 */
+	public static String getWord(String sentence, int wordIndex, StringPool pool) {
+		if ( sentence == null ) return null;
+		return internWords(sentence, 0, sentence.length(), wordIndex, wordIndex, pool);
+	}
+
+	/**
+	 * Pools words fromWord..toWord of text[start, end), concatenated without separator as getWords does.
+	 * A single word is interned straight from its char range, several are joined in the thread's builder.
+	 * For a range of words the result is trimmed like getWords trims it, a single word is kept as getWord returns it
+	 * @return pooled string, or null if there is no word at fromWord
+	 */
+	private static String internWords(String text, int start, int end, int fromWord, int toWord, StringPool pool) {
+		int _word = 0;
+		int _first = -1;
+		int _firstEnd = -1;
+		StringBuilder _sb = null;
+		for ( int i=start; i<end && _word<=toWord; i++ ) {
+			if ( text.charAt(i) == ' ' ) continue;
+			int _end = i;
+			while ( _end < end && text.charAt(_end) != ' ' ) {
+				_end++;
+			}
+			if ( _word >= fromWord ) {
+				if ( _first == -1 ) {
+					_first = i;
+					_firstEnd = _end;
+				} else {
+					if ( _sb == null ) {
+						_sb = acquireBuilder();
+						_sb.append(text, _first, _firstEnd);
+					}
+					_sb.append(text, i, _end);
+				}
+			}
+			_word++;
+			i = _end;
+		}
+		if ( _first == -1 ) return null;
+		boolean _trim = ( fromWord != toWord );
+		if ( _sb == null ) {
+			if ( _trim ) {
+				while ( _first < _firstEnd && text.charAt(_first) <= ' ' ) _first++;
+				while ( _firstEnd > _first && text.charAt(_firstEnd - 1) <= ' ' ) _firstEnd--;
+			}
+			return pool.intern(text, _first, _firstEnd);
+		}
+		int _from = 0;
+		int _to = _sb.length();
+		if ( _trim ) {
+			while ( _from < _to && _sb.charAt(_from) <= ' ' ) _from++;
+			while ( _to > _from && _sb.charAt(_to - 1) <= ' ' ) _to--;
+		}
+		String _retval = pool.intern(_sb, _from, _to);
+		recycleBuilder(_sb);
+		return _retval;
+	}
+
+	/**
+	 * Counts words of text[start, end), same as getWordCount on that range
+	 */
+	private static int countWords(String text, int start, int end) {
+		int _retval = 0;
+		boolean _inWord = false;
+		for ( int i=start; i<end; i++ ) {
+			boolean _space = ( text.charAt(i) == ' ' );
+			if ( !_space && !_inWord ) _retval++;
+			_inWord = !_space;
+		}
+		return _retval;
+	}
+
+	/**
+	 * @return index of the first char String.trim() would keep
+	 */
+	private static int trimStart(String s) {
+		int _retval = 0;
+		while ( _retval < s.length() && s.charAt(_retval) <= ' ' ) {
+			_retval++;
+		}
+		return _retval;
+	}
+
+	/**
+	 * @return index following the last char String.trim() would keep
+	 */
+	private static int trimEnd(String s, int start) {
+		int _retval = s.length();
+		while ( _retval > start && s.charAt(_retval - 1) <= ' ' ) {
+			_retval--;
+		}
+		return _retval;
+	}
+
 	public static String getWords(String sentence, int startWordIndex, int endWordIndex) {
 		String _retval = "";
 		for ( int i=startWordIndex; i<=endWordIndex; i++) {
@@ -139,6 +279,46 @@ public class Utils {
 		}
 	}
 	
+	/**
+	 * Same as {@link #getFirstName(String)}, returning pooled instances so repeated names share one String.
+	 * Works on the raw name, a name already in the pool is returned without creating any String
+	 * @param fullName
+	 * @param pool
+	 * @return
+	 */
+	public static String getFirstName(String fullName, StringPool pool) {
+		if ( fullName == null ) return null;
+		int _start = trimStart(fullName);
+		int _end = trimEnd(fullName, _start);
+		if ( countWords(fullName, _start, _end) > 3 ) {
+			return internWords(fullName, _start, _end, 0, 1, pool);
+		} else {
+			return internWords(fullName, _start, _end, 0, 0, pool);
+		}
+	}
+
+	public static String getLastName1(String fullName, StringPool pool) {
+		if ( fullName == null ) return null;
+		int _start = trimStart(fullName);
+		int _end = trimEnd(fullName, _start);
+		if ( countWords(fullName, _start, _end) > 3 ) {
+			return internWords(fullName, _start, _end, 2, 2, pool);
+		} else {
+			return internWords(fullName, _start, _end, 1, 1, pool);
+		}
+	}
+
+	public static String getLastName2(String fullName, StringPool pool) {
+		if ( fullName == null ) return null;
+		int _start = trimStart(fullName);
+		int _end = trimEnd(fullName, _start);
+		if ( countWords(fullName, _start, _end) > 3 ) {
+			return internWords(fullName, _start, _end, 3, 999, pool);
+		} else {
+			return internWords(fullName, _start, _end, 2, 2, pool);
+		}
+	}
+
 	public static String setFirstName(String fullName,String firstName) {
 		fullName = coalesce(fullName,"");
 		if ( getWordCount(fullName) > 3 ) {
@@ -238,13 +418,73 @@ public class Utils {
 	 * @return
 	 */
 	public static String concatenate(String... args) {
-		StringBuilder _sb = new StringBuilder();
+		// first pass sizes the builder, so it never grows
+		int _length = 0;
+		for (String arg : args) {
+			if ( arg != null ) _length += arg.length();
+		}
+		StringBuilder _sb = new StringBuilder(_length);
 		for (String arg : args) {
 			if ( arg != null ) _sb.append(arg);
 		}
 		return _sb.toString();
 	}
 
+	public static String concatenate(String a, String b) {
+		if ( a == null ) return ( b == null ? "" : b );
+		if ( b == null ) return a;
+		return new StringBuilder(a.length() + b.length()).append(a).append(b).toString();
+	}
+
+	public static String concatenate(String a, String b, String c) {
+		return new StringBuilder(length(a) + length(b) + length(c))
+			.append(a == null ? "" : a).append(b == null ? "" : b).append(c == null ? "" : c).toString();
+	}
+
+	public static String concatenate(String a, String b, String c, String d) {
+		return new StringBuilder(length(a) + length(b) + length(c) + length(d))
+			.append(a == null ? "" : a).append(b == null ? "" : b).append(c == null ? "" : c).append(d == null ? "" : d).toString();
+	}
+
+	private static int length(CharSequence s) {
+		return ( s == null ? 0 : s.length() );
+	}
+
+	/**
+	 * Returns an empty builder owned by the calling thread, for assembling larger strings without
+	 * growing a fresh builder every time. Hand it back with {@link #releaseBuilder(StringBuilder)};
+	 * nested acquisitions on the same thread get a new builder
+	 * @return empty builder
+	 */
+	public static StringBuilder acquireBuilder() {
+		StringBuilder[] _slot = builders.get();
+		StringBuilder _retval = _slot[0];
+		if ( _retval == null ) {
+			return new StringBuilder(256);
+		}
+		_slot[0] = null;
+		return _retval;
+	}
+
+	/**
+	 * Returns builder contents and keeps the builder for reuse by this thread. The builder must
+	 * not be used after this call
+	 * @param builder obtained from {@link #acquireBuilder()}
+	 * @return builder contents
+	 */
+	public static String releaseBuilder(StringBuilder builder) {
+		String _retval = builder.toString();
+		recycleBuilder(builder);
+		return _retval;
+	}
+
+	private static void recycleBuilder(StringBuilder builder) {
+		if ( builder.capacity() <= MAX_REUSED_BUILDER_CAPACITY ) {
+			builder.setLength(0);
+			builders.get()[0] = builder;
+		}
+	}
+
 	/**
 	 * Compares two objects. Will properly handle NULL objects
 	 * 
@@ -315,9 +555,19 @@ public class Utils {
 	}
 	
 	public static boolean hasValue(Object obj) {
-		if ( obj != null && obj.toString().compareToIgnoreCase("") > 0 ) return true;
+		if ( obj instanceof CharSequence ) return hasValue((CharSequence) obj);
+		if ( obj != null && obj.toString().length() > 0 ) return true;
 		return false;
 	}
+
+	/**
+	 * Checks for non-null, non-empty text without converting it to String
+	 * @param s
+	 * @return true if s has at least one character
+	 */
+	public static boolean hasValue(CharSequence s) {
+		return ( s != null && s.length() > 0 );
+	}
 	
 	public static byte[] serializeObject(Serializable obj) {
 		try
@@ -0,0 +1,81 @@
+package com.greatnowhere.utils;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+/**
+ * Metadata cached for classes of a discarded classloader must not keep the classloader reachable
+ */
+public class ReflectionUnloadTest {
+
+	public static class Plugin {
+		public String name = "plugin";
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Defines Plugin itself instead of delegating to the test classpath
+	 */
+	private static class PluginLoader extends ClassLoader {
+
+		PluginLoader() {
+			super(null);
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			if ( !name.equals(Plugin.class.getName()) ) throw new ClassNotFoundException(name);
+			InputStream _in = ReflectionUnloadTest.class.getResourceAsStream("/" + name.replace('.', '/') + ".class");
+			try {
+				ByteArrayOutputStream _out = new ByteArrayOutputStream();
+				byte[] _buf = new byte[4096];
+				int _len;
+				while ( (_len = _in.read(_buf)) != -1 ) {
+					_out.write(_buf, 0, _len);
+				}
+				byte[] _bytes = _out.toByteArray();
+				return defineClass(name, _bytes, 0, _bytes.length);
+			} catch (IOException e) {
+				throw new ClassNotFoundException(name, e);
+			} finally {
+				try {
+					_in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	@Test
+	public void classLoaderUnloadsAfterReflection() throws Exception {
+		WeakReference<ClassLoader> _loader = usePlugin();
+		for ( int i=0; i<100 && _loader.get() != null; i++ ) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("plugin classloader is still reachable", _loader.get());
+	}
+
+	private static WeakReference<ClassLoader> usePlugin() throws Exception {
+		ClassLoader _loader = new PluginLoader();
+		Class<?> _cls = _loader.loadClass(Plugin.class.getName());
+		Object _plugin = _cls.newInstance();
+		assertNotNull(Reflection.findMethod(_plugin, "getName"));
+		Reflection.getFieldsImplementing(_cls, String.class);
+		// lookup on a system class keyed by the plugin class
+		Reflection.getFieldsImplementing(String.class, _cls);
+		Reflection.getTypeArguments(Object.class, _cls);
+		Reflection.getPropertyValue(_plugin, "name");
+		return new WeakReference<ClassLoader>(_loader);
+	}
+}
@@ -0,0 +1,34 @@
+package com.greatnowhere.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Pooled name extraction must return what the unpooled methods return
+ */
+public class UtilsPooledNamesTest {
+
+	private static final String[] NAMES = { "", " ", "Ana", "Ana Lopez", "Ana Sanchez  Martinez", " Maria  Jose Garcia   Lopez ",
+			"Maria Jose Garcia Lopez Perez", "a \t b c", "a b \t c", "a b c \t", "\t a b c d", "a\tb c" };
+
+	@Test
+	public void pooledMatchesUnpooled() {
+		StringPool _pool = new StringPool(1024);
+		for ( String _name : NAMES ) {
+			for ( int i=0; i<2; i++ ) {
+				assertEquals("first name of [" + _name + "]", Utils.getFirstName(_name), Utils.getFirstName(_name, _pool));
+				assertEquals("last name 1 of [" + _name + "]", Utils.getLastName1(_name), Utils.getLastName1(_name, _pool));
+				assertEquals("last name 2 of [" + _name + "]", Utils.getLastName2(_name), Utils.getLastName2(_name, _pool));
+			}
+		}
+	}
+
+	@Test
+	public void multiWordNameIsTrimmed() {
+		StringPool _pool = new StringPool(1024);
+		assertEquals("a", Utils.getFirstName("a \t b c", _pool));
+		assertSame(Utils.getFirstName("a \t b c", _pool), Utils.getFirstName("a b", _pool));
+	}
+}